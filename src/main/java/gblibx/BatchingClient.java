@@ -0,0 +1,156 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static java.util.Objects.isNull;
+
+/**
+ * Coalesce many small postJSON (to same host, port and path) into one POST of JSON array,
+ * sent when maxItems are accumulated or maxDelay after first item (cf. {@link PeriodicWork}).
+ * <p>
+ * Each caller gets own future: if the response is an array (i.e. "data") of same length
+ * as batch, caller gets its element; otherwise every caller gets the (whole) response.
+ * A failed batch fails every caller.
+ * Batches are sent with {@link HttpConnection#postJSONRetryAsync(String, int, String, List)}.
+ */
+public class BatchingClient {
+    public BatchingClient(int maxItems, Duration maxDelay) {
+        invariant(0 < maxItems);
+        __maxItems = maxItems;
+        __timer = CompletableFuture.delayedExecutor(maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue POST item.
+     *
+     * @param host hostname (can be null if path is complete url).
+     * @param port port.
+     * @param path path.json
+     * @param vals item.
+     * @return future response (for this item).
+     */
+    public CompletableFuture<Object> postJSON(String host, int port, String path, Map<String, Object> vals) {
+        final String key = String.format("%s:%d%s", host, port, path);
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = __batches.get(key);
+            if (isNull(batch)) {
+                batch = new Batch(host, port, path);
+                __batches.put(key, batch);
+                final Batch timed = batch;
+                __timer.execute(() -> __flush(key, timed));
+            }
+            batch.items.add(vals);
+            batch.futures.add(future);
+            if (batch.items.size() >= __maxItems) {
+                __batches.remove(key);
+                full = batch;
+            }
+        }
+        __items.incrementAndGet();
+        if (isNonNull(full)) __send(full);
+        return future;
+    }
+
+    /**
+     * Send all pending batches now.
+     */
+    public void flush() {
+        final List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(__batches.values());
+            __batches.clear();
+        }
+        batches.forEach(this::__send);
+    }
+
+    public long getItems() {
+        return __items.get();
+    }
+
+    public long getBatches() {
+        return __sent.get();
+    }
+
+    private void __flush(String key, Batch batch) {
+        synchronized (this) {
+            //already sent (full or flushed)?
+            if (batch != __batches.get(key)) return;
+            __batches.remove(key);
+        }
+        __send(batch);
+    }
+
+    private void __send(Batch batch) {
+        __sent.incrementAndGet();
+        HttpConnection.postJSONRetryAsync(batch.host, batch.port, batch.path, batch.items)
+                .whenComplete((resp, ex) -> {
+                    final int n = batch.futures.size();
+                    if (isNonNull(ex)) {
+                        batch.futures.forEach(future -> future.completeExceptionally(ex));
+                        return;
+                    }
+                    final Object data = resp.get("data");
+                    final boolean demux = (data instanceof Object[]) && (((Object[]) data).length == n);
+                    for (int i = 0; i < n; ++i) {
+                        batch.futures.get(i).complete(demux ? ((Object[]) data)[i] : resp);
+                    }
+                });
+    }
+
+    private static class Batch {
+        private Batch(String host, int port, String path) {
+            this.host = host;
+            this.port = port;
+            this.path = path;
+        }
+
+        private final String host, path;
+        private final int port;
+        private final List<Map<String, Object>> items = new ArrayList<>();
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+    }
+
+    private final int __maxItems;
+    private final Executor __timer;
+    private final Map<String, Batch> __batches = new HashMap<>();
+    private final AtomicLong __items = new AtomicLong(0), __sent = new AtomicLong(0);
+}
@@ -34,6 +34,11 @@ import java.util.regex.Pattern;
 
 import static gblibx.Util.invariant;
 
+/**
+ * Run command in background via csh (pid is parsed from csh job output).
+ * See {@link ProcessMonitor} to launch and track background processes
+ * directly (by ProcessHandle), without csh.
+ */
 public class BgRunCmd extends RunCmd {
     public static BgRunCmd create(String cmd) {
         return create(cmd, System.out::println);
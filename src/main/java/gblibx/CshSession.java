@@ -0,0 +1,365 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static java.util.Objects.isNull;
+
+/**
+ * Long-lived shell (coprocess) which runs commands sent over stdin.
+ * Avoids fork/exec of a new shell per command.
+ * Each command's stdout/stderr (and exit status) are framed by a unique sentinel.
+ * Environment and working directory persist across commands, until reset().
+ * Commands time out after TIMEOUT_SEC by default (e.g., an unclosed quote or block
+ * would otherwise wait forever for more input): session is killed and restarted on next use.
+ * NOTE: commands must not read stdin (which is the command stream).
+ */
+public class CshSession implements AutoCloseable {
+    public CshSession() throws IOException {
+        this(CSH, "$status", "-f");
+    }
+
+    /**
+     * Create session.
+     *
+     * @param shell     path to shell.
+     * @param statusVar shell variable of last exit status (e.g., "$status" for csh, "$?" for sh).
+     * @param opts      shell options (must read commands from stdin).
+     * @throws IOException if shell cannot be started.
+     */
+    public CshSession(String shell, String statusVar, String... opts) throws IOException {
+        __argv = Util.append(new String[]{shell}, opts);
+        __statusVar = statusVar;
+        __start();
+    }
+
+    public static class Result {
+        /**
+         * Exit value of command (-1 if shell died).
+         */
+        public int exitValue = -1;
+        /**
+         * False if shell died during command (session is restarted on next use).
+         */
+        public boolean completed = false;
+        /**
+         * True if command exceeded timeout (and session was killed).
+         */
+        public volatile boolean timedOut = false;
+
+        public boolean isSuccess() {
+            return completed && (0 == exitValue);
+        }
+    }
+
+    /**
+     * Set timeout of each command: if exceeded, shell (and command) is killed
+     * and session is restarted on next use.
+     *
+     * @param timeout timeout (null for none; default is TIMEOUT_SEC).
+     * @return this object.
+     */
+    public CshSession setTimeout(Duration timeout) {
+        __timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Run command in this session.
+     *
+     * @param cmd  command (shell syntax).
+     * @param cout stdout consumer.
+     * @param cerr stderr consumer.
+     * @return result.
+     */
+    public synchronized Result run(String cmd, Consumer<String> cout, Consumer<String> cerr) {
+        final Result result = new Result();
+        ScheduledFuture<?> deadline = null;
+        try {
+            if (!isAlive()) reset();
+            if (isNonNull(__timeout)) {
+                deadline = RunCmd.getWatchdog().schedule(() -> {
+                    result.timedOut = true;
+                    kill();
+                }, __timeout.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            final String sentinel = __newSentinel();
+            final CompletableFuture<String> err = CompletableFuture.supplyAsync(
+                    () -> __readUntil(__cerr, sentinel, cerr), RunCmd.getDefaultExecutor());
+            __cin.write(cmd);
+            __cin.write(String.format("\necho %s %s; echo %s > /dev/stderr\n", sentinel, __statusVar, sentinel));
+            __cin.flush();
+            final String status = __readUntil(__cout, sentinel, cout);
+            err.join();
+            if (isNonNull(status)) {
+                result.exitValue = Integer.parseInt(status.trim());
+                result.completed = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            Util.logException(e);
+        } finally {
+            if (isNonNull(deadline)) deadline.cancel(false);
+        }
+        if (result.timedOut) result.completed = false;
+        if (!result.completed) __stop();    //restart on next use
+        return result;
+    }
+
+    /**
+     * Terminate shell (and any running command) without waiting for run() to complete:
+     * run() returns an incomplete result, and session is restarted on next use.
+     */
+    public void kill() {
+        final Process process = __process;
+        if (isNonNull(process)) RunCmd.destroyTree(process.toHandle());
+    }
+
+    public boolean isAlive() {
+        return isNonNull(__process) && __process.isAlive();
+    }
+
+    /**
+     * Restart shell (with fresh environment and working directory).
+     *
+     * @throws IOException if shell cannot be started.
+     */
+    public synchronized void reset() throws IOException {
+        __stop();
+        __start();
+    }
+
+    @Override
+    public synchronized void close() {
+        __stop();
+    }
+
+    /**
+     * Read lines (to consumer) until sentinel.
+     *
+     * @return text after sentinel (or null on EOF).
+     */
+    private static String __readUntil(BufferedReader reader, String sentinel, Consumer<String> os) {
+        try {
+            String line;
+            while (isNonNull(line = reader.readLine())) {
+                final int ix = line.indexOf(sentinel);
+                if (0 > ix) {
+                    os.accept(line);
+                } else {
+                    if (0 < ix) os.accept(line.substring(0, ix));   //unterminated last line
+                    return line.substring(ix + sentinel.length());
+                }
+            }
+        } catch (IOException e) {
+            ;//shell died: same as EOF
+        }
+        return null;
+    }
+
+    private void __start() throws IOException {
+        __process = new ProcessBuilder(__argv).start();
+        __cin = new BufferedWriter(new OutputStreamWriter(__process.getOutputStream(), StandardCharsets.UTF_8));
+        __cout = new BufferedReader(new InputStreamReader(__process.getInputStream(), StandardCharsets.UTF_8));
+        __cerr = new BufferedReader(new InputStreamReader(__process.getErrorStream(), StandardCharsets.UTF_8));
+    }
+
+    private void __stop() {
+        if (isNull(__process)) return;
+        try {
+            __cin.close();  //shell exits on EOF
+        } catch (IOException e) {
+            ;//ignore
+        }
+        __process.destroy();
+        __process = null;
+    }
+
+    private static String __newSentinel() {
+        final byte[] bytes = new byte[12];
+        __RANDOM.nextBytes(bytes);
+        final StringBuilder sbuf = new StringBuilder("__GBLIBX_");
+        for (byte b : bytes) sbuf.append(String.format("%02x", b));
+        return sbuf.append("__").toString();
+    }
+
+    /**
+     * Pool of sessions: each command borrows an idle session (or starts a new one, up to max).
+     * Borrowed sessions must be released (even if run() failed).
+     */
+    public static class Pool implements AutoCloseable {
+        public Pool(int max) {
+            this(max, false);
+        }
+
+        public Pool(int max, boolean resetAfterUse) {
+            this(max, resetAfterUse, CSH, "$status", "-f");
+        }
+
+        /**
+         * Create pool.
+         *
+         * @param max           max sessions.
+         * @param resetAfterUse reset session (environment, directory) after each command.
+         * @param shell         path to shell.
+         * @param statusVar     shell variable of last exit status.
+         * @param opts          shell options.
+         */
+        public Pool(int max, boolean resetAfterUse, String shell, String statusVar, String... opts) {
+            invariant(0 < max, "max must be > 0");
+            __resetAfterUse = resetAfterUse;
+            __shell = shell;
+            __statusVar = statusVar;
+            __opts = opts;
+            __permits = new Semaphore(max);
+        }
+
+        /**
+         * Set timeout of each command (see {@link CshSession#setTimeout(Duration)}).
+         *
+         * @param timeout timeout (null for none; default is TIMEOUT_SEC).
+         * @return this object.
+         */
+        public Pool setTimeout(Duration timeout) {
+            __timeout = timeout;
+            return this;
+        }
+
+        public Result run(String cmd, Consumer<String> cout, Consumer<String> cerr) throws IOException, InterruptedException {
+            final CshSession session = borrow();
+            try {
+                return session.run(cmd, cout, cerr);
+            } finally {
+                release(session);
+            }
+        }
+
+        public CshSession borrow() throws IOException, InterruptedException {
+            __permits.acquire();
+            CshSession session = null;
+            try {
+                session = __idle.pollFirst();
+                if (isNull(session)) session = new CshSession(__shell, __statusVar, __opts);
+                session.setTimeout(__timeout);
+                synchronized (this) {
+                    invariant(!__closed, "pool closed");
+                    __borrowed.add(session);
+                }
+                return session;
+            } catch (IOException | RuntimeException e) {
+                if (isNonNull(session)) session.close();
+                __permits.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Return session to pool.
+         * If it cannot be reset (or pool is closed), it is closed instead.
+         *
+         * @param session borrowed session.
+         * @throws IOException if reset failed.
+         */
+        public void release(CshSession session) throws IOException {
+            synchronized (this) {
+                invariant(__borrowed.remove(session), "session not borrowed");
+            }
+            boolean idle = false;
+            try {
+                if (__resetAfterUse) session.reset();
+                synchronized (this) {
+                    if (!__closed) {
+                        __idle.addFirst(session);   //LIFO: keep hot sessions busy
+                        idle = true;
+                    }
+                }
+            } finally {
+                if (!idle) session.close();
+                __permits.release();
+            }
+        }
+
+        /**
+         * Close idle sessions, and kill borrowed ones (their run() returns incomplete).
+         */
+        @Override
+        public void close() {
+            final Set<CshSession> borrowed;
+            synchronized (this) {
+                __closed = true;
+                borrowed = new HashSet<>(__borrowed);
+            }
+            borrowed.forEach(CshSession::kill);
+            CshSession session;
+            while (isNonNull(session = __idle.pollFirst())) {
+                session.close();
+            }
+        }
+
+        private final boolean __resetAfterUse;
+        private final String __shell, __statusVar;
+        private final String[] __opts;
+        private final Semaphore __permits;
+        private Duration __timeout = __defaultTimeout();
+        private boolean __closed = false;
+        private final Set<CshSession> __borrowed = new HashSet<>();
+        private final LinkedBlockingDeque<CshSession> __idle = new LinkedBlockingDeque<>();
+    }
+
+    private static Duration __defaultTimeout() {
+        return (0 < TIMEOUT_SEC) ? Duration.ofSeconds(TIMEOUT_SEC) : null;
+    }
+
+    private static final String CSH = System.getProperty("csh.path", "/bin/csh");
+    /**
+     * Default command timeout (0 for none).
+     */
+    public static final long TIMEOUT_SEC =
+            Long.parseLong(System.getProperty("gblibx.CshSession.timeoutSec", "3600"));
+    private static final SecureRandom __RANDOM = new SecureRandom();
+
+    private final String[] __argv;
+    private final String __statusVar;
+    private volatile Process __process = null;
+    private Duration __timeout = __defaultTimeout();
+    private BufferedWriter __cin;
+    private BufferedReader __cout, __cerr;
+}
@@ -0,0 +1,204 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import static gblibx.Util.invariant;
+
+/**
+ * Logger.Print which writes an AES-GCM encrypted log.
+ * Messages are buffered into chunks and each chunk is sealed separately,
+ * so encryption cost scales with bytes written (not with message count).
+ * Use {@link EncryptedLogReader} to decrypt.
+ * <p>
+ * File format (a segment per open, so append is allowed):
+ * <pre>
+ *   header: MAGIC(4) VERSION(1) NONCE_PREFIX(8)
+ *   chunk:  LENGTH(4) SEQNO(4) CIPHERTEXT+TAG(LENGTH)
+ * </pre>
+ * The chunk nonce is NONCE_PREFIX+SEQNO and SEQNO is also the AAD,
+ * so any chunk can be decrypted on its own, but cannot be reordered.
+ * SEQNO starts at 0 in each segment, and close() seals a (possibly empty)
+ * last chunk with the {@link #FINAL} bit set in SEQNO,
+ * so a truncated segment is detected by the reader.
+ * NOTE: messages are only written once a chunk fills, or on flush()/close().
+ */
+public class EncryptedFileLogger implements Logger.Print {
+    public EncryptedFileLogger(File flog, File kiv) throws IOException {
+        this(flog, kiv, false);
+    }
+
+    public EncryptedFileLogger(File flog, File kiv, boolean append) throws IOException {
+        this(flog, Encryptor.getSecretKey(kiv), append, CHUNK_SIZE);
+    }
+
+    public EncryptedFileLogger(File flog, SecretKey key, boolean append, int chunkSize) throws IOException {
+        //a chunk must hold any (4 byte max) encoded character
+        invariant(4 <= chunkSize, "chunkSize must be >= 4");
+        __file = flog;
+        __key = key;
+        __plain = ByteBuffer.allocate(chunkSize);
+        __sealed = new byte[chunkSize + TAG_LENGTH];
+        __os = new DataOutputStream(new FileOutputStream(__file, append));
+        try {
+            __cipher = Cipher.getInstance(CIPHER);
+            __RANDOM.nextBytes(__nonce);
+            __os.writeInt(MAGIC);
+            __os.writeByte(VERSION);
+            __os.write(__nonce, 0, NONCE_PREFIX_LENGTH);
+        } catch (GeneralSecurityException | IOException e) {
+            __os.close();
+            throw (e instanceof IOException) ? (IOException) e : new IOException(e);
+        }
+    }
+
+    /**
+     * Unconditionally, append message to current chunk.
+     *
+     * @param svr     value is ignored.
+     * @param message message to print.
+     * @return this object.
+     */
+    @Override
+    public synchronized Logger.Print print(Logger.ELevel svr, String message) {
+        try {
+            __append(CharBuffer.wrap(message));
+            __append(CharBuffer.wrap(System.lineSeparator()));
+        } catch (IOException e) {
+            Util.logException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Seal (encrypt and write) current (partial) chunk.
+     */
+    @Override
+    public synchronized void flush() {
+        try {
+            __seal(false);
+            __os.flush();
+        } catch (IOException e) {
+            Util.logException(e);
+        }
+    }
+
+    public File getFile() {
+        return __file;
+    }
+
+    public String getFileName() {
+        return getFile().getPath();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (__closed) return;
+        __closed = true;
+        try {
+            __seal(true);
+        } finally {
+            __os.close();
+        }
+    }
+
+    private void __append(CharBuffer chars) throws IOException {
+        __encoder.reset();
+        while (true) {
+            final CoderResult rc = __encoder.encode(chars, __plain, true);
+            if (rc.isOverflow()) {
+                __seal(false);
+            } else {
+                invariant(rc.isUnderflow(), "unexpected encoder result");
+                break;
+            }
+        }
+    }
+
+    private void __seal(boolean last) throws IOException {
+        if (!last && (0 == __plain.position())) return;
+        invariant(0 == (__seqno & FINAL), "chunk sequence overflow");
+        final int seqno = __seqno++ | (last ? FINAL : 0);
+        ByteBuffer.wrap(__nonce, NONCE_PREFIX_LENGTH, 4).putInt(seqno);
+        final int n;
+        try {
+            __cipher.init(Cipher.ENCRYPT_MODE, __key, new GCMParameterSpec(8 * TAG_LENGTH, __nonce));
+            __cipher.updateAAD(__nonce, NONCE_PREFIX_LENGTH, 4);
+            n = __cipher.doFinal(__plain.array(), 0, __plain.position(), __sealed, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        __plain.clear();
+        __os.writeInt(n);
+        __os.writeInt(seqno);
+        __os.write(__sealed, 0, n);
+    }
+
+    static final int MAGIC = 0x47425845;    //GBXE
+    static final int VERSION = 2;
+    static final int NONCE_PREFIX_LENGTH = 8;
+    static final int TAG_LENGTH = 16;
+    static final String CIPHER = "AES/GCM/NoPadding";
+    /**
+     * SEQNO bit which marks last chunk of segment.
+     */
+    static final int FINAL = 0x80000000;
+
+    public static final int CHUNK_SIZE =
+            Integer.parseInt(System.getProperty("gblibx.EncryptedFileLogger.CHUNK_SIZE", "65536"));
+
+    private static final SecureRandom __RANDOM = new SecureRandom();
+
+    private final File __file;
+    private final SecretKey __key;
+    private final DataOutputStream __os;
+    private final Cipher __cipher;
+    private final ByteBuffer __plain;
+    private final byte[] __sealed;
+    private final byte[] __nonce = new byte[NONCE_PREFIX_LENGTH + 4];
+    private final CharsetEncoder __encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int __seqno = 0;
+    private boolean __closed = false;
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import static gblibx.EncryptedFileLogger.*;
+
+/**
+ * Decrypt log written by {@link EncryptedFileLogger}.
+ * Chunks are decrypted (and authenticated) one at a time,
+ * so memory use is bounded by chunk size.
+ * Chunks must arrive in sequence, and each segment must end with its
+ * final chunk: else an IOException is thrown (after any preceding
+ * chunks were read), as with a log whose writer was never closed.
+ */
+public class EncryptedLogReader extends InputStream {
+    public EncryptedLogReader(File flog, File kiv) throws IOException {
+        this(new FileInputStream(flog), Encryptor.getSecretKey(kiv));
+    }
+
+    public EncryptedLogReader(InputStream ins, SecretKey key) throws IOException {
+        __ins = new DataInputStream(new BufferedInputStream(ins));
+        __key = key;
+        try {
+            __cipher = Cipher.getInstance(CIPHER);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!__fill()) return -1;
+        return __plain[__pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (0 == len) return 0;
+        if (!__fill()) return -1;
+        final int n = Math.min(len, __end - __pos);
+        System.arraycopy(__plain, __pos, buf, off, n);
+        __pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        __ins.close();
+    }
+
+    /**
+     * Decrypt log to stream.
+     *
+     * @param flog encrypted log.
+     * @param kiv  key file.
+     * @param os   write plaintext here.
+     * @throws IOException
+     */
+    public static void decrypt(File flog, File kiv, OutputStream os) throws IOException {
+        try (EncryptedLogReader ins = new EncryptedLogReader(flog, kiv)) {
+            ins.transferTo(os);
+        }
+        os.flush();
+    }
+
+    /**
+     * Read next chunk (if current one is consumed).
+     *
+     * @return false on EOF.
+     */
+    private boolean __fill() throws IOException {
+        while (__pos >= __end) {
+            final int lenOrMagic;
+            try {
+                lenOrMagic = __ins.readInt();
+            } catch (EOFException e) {
+                __endSegment();
+                return false;
+            }
+            if (MAGIC == lenOrMagic) {
+                __endSegment();
+                __readHeader();
+            } else {
+                __readChunk(lenOrMagic);
+            }
+        }
+        return true;
+    }
+
+    private void __readHeader() throws IOException {
+        final int version = __ins.readUnsignedByte();
+        if (VERSION != version) {
+            throw new IOException(String.format("unsupported version: %d", version));
+        }
+        __ins.readFully(__nonce, 0, NONCE_PREFIX_LENGTH);
+        __hasHeader = true;
+        __seqno = 0;
+    }
+
+    private void __endSegment() throws IOException {
+        if (__hasHeader && (0 <= __seqno)) {
+            throw new IOException(String.format("truncated segment: missing final chunk %d", __seqno));
+        }
+    }
+
+    private void __readChunk(int len) throws IOException {
+        if (!__hasHeader) throw new IOException("missing header");
+        if (0 > __seqno) throw new IOException("chunk after final chunk");
+        if ((TAG_LENGTH > len) || (MAX_CHUNK < len)) {
+            throw new IOException(String.format("invalid chunk length: %d", len));
+        }
+        final int seqno = __ins.readInt();
+        if (__seqno != (seqno & ~FINAL)) {
+            throw new IOException(String.format("chunk %d: expected %d", seqno & ~FINAL, __seqno));
+        }
+        if (__sealed.length < len) __sealed = new byte[len];
+        __ins.readFully(__sealed, 0, len);
+        if (__plain.length < len) __plain = new byte[len];
+        ByteBuffer.wrap(__nonce, NONCE_PREFIX_LENGTH, 4).putInt(seqno);
+        try {
+            __cipher.init(Cipher.DECRYPT_MODE, __key, new GCMParameterSpec(8 * TAG_LENGTH, __nonce));
+            __cipher.updateAAD(__nonce, NONCE_PREFIX_LENGTH, 4);
+            __end = __cipher.doFinal(__sealed, 0, len, __plain, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(String.format("chunk %d: cannot decrypt", __seqno), e);
+        }
+        //only trust FINAL once authenticated (it is part of AAD)
+        __seqno = (0 != (seqno & FINAL)) ? -1 : (__seqno + 1);
+        __pos = 0;
+    }
+
+    private static final int MAX_CHUNK = 1 << 28;
+
+    private final DataInputStream __ins;
+    private final SecretKey __key;
+    private final Cipher __cipher;
+    private final byte[] __nonce = new byte[NONCE_PREFIX_LENGTH + 4];
+    private boolean __hasHeader = false;
+    /**
+     * Expected seqno of next chunk in segment (-1 once final chunk read).
+     */
+    private int __seqno = 0;
+    private byte[] __sealed = new byte[0], __plain = new byte[0];
+    private int __pos = 0, __end = 0;
+
+    public static void main(String[] argv) {
+        if (2 != argv.length) {
+            System.err.println("Usage: keyfile logfile");
+            System.exit(1);
+        }
+        try {
+            decrypt(new File(argv[1]), new File(argv[0]), System.out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -33,6 +33,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 import static gblibx.Util.invariant;
@@ -107,6 +108,23 @@ public class EncryptorDemo {
         return null;
     }
 
+    /**
+     * Get AES key from key+IV string (IV part is ignored).
+     * Used by stream ciphers (e.g., {@link EncryptedFileLogger}) which manage their own nonce.
+     *
+     * @param kiv key+IV (as used by {@link #encrypt(String, String)}).
+     * @return secret key.
+     */
+    public static SecretKeySpec getSecretKey(String kiv) {
+        final String key = kiv.substring(16);
+        invariant(16 == key.length(), "key must be 16 chars");
+        return new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), KEY);
+    }
+
+    public static SecretKeySpec getSecretKey(File kiv) throws IOException {
+        return getSecretKey(Util.readFile(kiv.getAbsolutePath()).trim());
+    }
+
     private static Util.Pair<IvParameterSpec, SecretKeySpec> getKeys(String key, String randomVector) throws UnsupportedEncodingException {
         invariant(16 == key.length(), "key must be 16 chars");
         invariant(16 == randomVector.length(), "IV must be 16 chars");
@@ -0,0 +1,272 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Track exceptions by fingerprint (hash of class and stack frames, including causes).
+ * Used to throttle repeated exceptions: only the first occurrence in a window
+ * is reported in full; later ones (in same window) are only counted.
+ * Counts still pending when a window expires are reported by {@link #flush(Consumer)}
+ * (the window stays expired, so the next occurrence is still reported in full).
+ * Fingerprint lookup is under a short lock (counting is lock free); at most maxEntries
+ * fingerprints are tracked (least recently seen is dropped).
+ */
+public class ExceptionFingerprints {
+    public ExceptionFingerprints(Duration window) {
+        this(window, MAX_ENTRIES);
+    }
+
+    public ExceptionFingerprints(Duration window, int maxEntries) {
+        __windowNanos = window.toNanos();
+        __maxEntries = maxEntries;
+    }
+
+    /**
+     * Occurrence(s) to report.
+     */
+    public static class Report {
+        private Report(Entry entry, long suppressed, long nanos) {
+            this.entry = entry;
+            this.suppressed = suppressed;
+            this.interval = Duration.ofNanos(nanos);
+        }
+
+        public final Entry entry;
+        /**
+         * Number of occurrences suppressed (not reported) during interval.
+         */
+        public final long suppressed;
+        /**
+         * Actual time since previous report.
+         */
+        public final Duration interval;
+    }
+
+    public static class Entry {
+        private Entry(long fingerprint, Throwable first, long now) {
+            this.fingerprint = fingerprint;
+            this.className = first.getClass().getName();
+            this.message = first.getMessage();
+            this.firstSeen = Instant.now();
+            __windowStart = new AtomicLong(now);
+        }
+
+        public long getCount() {
+            return __count.sum();
+        }
+
+        public Instant getLastSeen() {
+            return __lastSeen;
+        }
+
+        /**
+         * Start new window if current one expired.
+         *
+         * @return report of occurrences suppressed in expired window (else null).
+         */
+        private Report __expire(long now, long windowNanos) {
+            final long start = __windowStart.get();
+            if ((now - start) >= windowNanos && __windowStart.compareAndSet(start, now)) {
+                return new Report(this, __inWindow.sumThenReset(), now - start);
+            }
+            return null;
+        }
+
+        /**
+         * Report occurrences suppressed in current window, if expired (window is not restarted).
+         *
+         * @return report (else null, if window not expired).
+         */
+        private Report __drain(long now, long windowNanos) {
+            final long start = __windowStart.get();
+            if ((now - start) < windowNanos) return null;
+            return new Report(this, __inWindow.sumThenReset(), now - start);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x %s (%s) x%d", fingerprint, className, message, getCount());
+        }
+
+        public final long fingerprint;
+        public final String className;
+        public final String message;
+        public final Instant firstSeen;
+        private volatile Instant __lastSeen;
+        private final LongAdder __count = new LongAdder();
+        private final LongAdder __inWindow = new LongAdder();
+        private final AtomicLong __windowStart;
+    }
+
+    /**
+     * Record exception occurrence.
+     *
+     * @param ex exception.
+     * @return null if occurrence is suppressed; otherwise, it starts a new window
+     * and should be reported in full (with number of occurrences suppressed
+     * in previous window).
+     */
+    public Report record(Throwable ex) {
+        final long fp = fingerprint(ex);
+        final long now = System.nanoTime();
+        final boolean isNew;
+        Entry entry;
+        synchronized (__entries) {
+            entry = __entries.get(fp);
+            isNew = (null == entry);
+            if (isNew) {
+                entry = new Entry(fp, ex, now);
+                __entries.put(fp, entry);
+            }
+        }
+        entry.__count.increment();
+        entry.__lastSeen = Instant.now();
+        if (isNew) return new Report(entry, 0, 0);
+        final Report report = entry.__expire(now, __windowNanos);
+        if (null == report) entry.__inWindow.increment();
+        return report;
+    }
+
+    /**
+     * Report occurrences suppressed in windows which have expired
+     * (and which would otherwise only be reported on next occurrence).
+     *
+     * @param reporter called with each report.
+     * @return true if suppressed occurrences remain (in windows not yet expired).
+     */
+    public boolean flush(Consumer<Report> reporter) {
+        final long now = System.nanoTime();
+        boolean pending = false;
+        for (Entry entry : __values()) {
+            if (0 == entry.__inWindow.sum()) continue;
+            final Report report = entry.__drain(now, __windowNanos);
+            if (null == report) {
+                pending = true;
+            } else if (0 < report.suppressed) {
+                reporter.accept(report);
+            }
+        }
+        return pending;
+    }
+
+    public Duration getWindow() {
+        return Duration.ofNanos(__windowNanos);
+    }
+
+    public Entry get(Throwable ex) {
+        synchronized (__entries) {
+            return __entries.get(fingerprint(ex));
+        }
+    }
+
+    /**
+     * Get most frequent exceptions.
+     *
+     * @param n max number to return.
+     * @return entries (in decreasing count order).
+     */
+    public List<Entry> getTop(int n) {
+        return __values()
+                .stream()
+                .sorted(Comparator.comparingLong(Entry::getCount).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    public void clear() {
+        synchronized (__entries) {
+            __entries.clear();
+        }
+    }
+
+    private List<Entry> __values() {
+        synchronized (__entries) {
+            return new ArrayList<>(__entries.values());
+        }
+    }
+
+    /**
+     * Compute fingerprint of exception.
+     * Messages are not included, since they often contain variable data.
+     *
+     * @param ex exception.
+     * @return 64-bit fingerprint.
+     */
+    public static long fingerprint(Throwable ex) {
+        long h = __FNV_BASIS;
+        for (int depth = 0; (null != ex) && (depth < __MAX_CAUSES); ex = ex.getCause(), ++depth) {
+            h = __mix(h, ex.getClass().getName().hashCode());
+            for (StackTraceElement ele : ex.getStackTrace()) {
+                h = __mix(h, ele.getClassName().hashCode());
+                h = __mix(h, ele.getMethodName().hashCode());
+                h = __mix(h, ele.getLineNumber());
+            }
+        }
+        return h;
+    }
+
+    private static long __mix(long h, int v) {
+        return (h ^ v) * __FNV_PRIME;
+    }
+
+    private static final long __FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long __FNV_PRIME = 0x100000001b3L;
+    private static final int __MAX_CAUSES = 8;
+
+    /**
+     * Default max number of fingerprints tracked.
+     */
+    public static final int MAX_ENTRIES =
+            Integer.parseInt(System.getProperty("gblibx.ExceptionFingerprints.maxEntries", "1024"));
+
+    private final long __windowNanos;
+    private final int __maxEntries;
+    /**
+     * Access ordered: least recently seen is dropped when full.
+     */
+    private final LinkedHashMap<Long, Entry> __entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > __maxEntries;
+        }
+
+        private static final long serialVersionUID = 1L;
+    };
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Read gzip (compressed) form of stream: i.e. pull-based dual of GZIPOutputStream,
+ * for consumers which read a body (e.g. HttpRequest.BodyPublishers.ofInputStream).
+ * Compresses as read, in constant memory.
+ */
+public class GzipCompressingInputStream extends InputStream {
+    public GzipCompressingInputStream(InputStream in) {
+        this(in, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public GzipCompressingInputStream(InputStream in, int level) {
+        __in = in;
+        __deflater = new Deflater(level, true);
+        //header: magic, CM=deflate, no flags, no mtime, no XFL, OS=unknown
+        __out = new byte[]{(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        __outLen = __out.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return (0 > read(b, 0, 1)) ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (0 == len) return 0;
+        while (__outPos >= __outLen) {
+            if (!__fill()) return -1;
+        }
+        final int n = Math.min(len, __outLen - __outPos);
+        System.arraycopy(__out, __outPos, b, off, n);
+        __outPos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        __deflater.end();
+        __in.close();
+    }
+
+    /**
+     * @return false at end (after trailer).
+     */
+    private boolean __fill() throws IOException {
+        if (__deflater.finished()) {
+            if (__trailerDone) return false;
+            __trailerDone = true;
+            final long crc = __crc.getValue(), size = __deflater.getBytesRead();
+            __out = new byte[8];
+            for (int i = 0; i < 4; ++i) {
+                __out[i] = (byte) (crc >>> (8 * i));
+                __out[4 + i] = (byte) (size >>> (8 * i));
+            }
+            __outPos = 0;
+            __outLen = 8;
+            return true;
+        }
+        if (__out.length < __buf.length) __out = new byte[__buf.length];
+        if (__deflater.needsInput() && !__eof) {
+            final int n = __in.read(__buf);
+            if (0 > n) {
+                __eof = true;
+                __deflater.finish();
+            } else {
+                __crc.update(__buf, 0, n);
+                __deflater.setInput(__buf, 0, n);
+            }
+        }
+        __outPos = 0;
+        __outLen = __deflater.deflate(__out);
+        return true;
+    }
+
+    private final InputStream __in;
+    private final Deflater __deflater;
+    private final CRC32 __crc = new CRC32();
+    private final byte[] __buf = new byte[8192];
+    private byte[] __out;
+    private int __outPos = 0, __outLen;
+    private boolean __eof = false, __trailerDone = false;
+}
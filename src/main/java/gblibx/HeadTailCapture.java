@@ -0,0 +1,148 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.toMega;
+
+/**
+ * Capture first (head) and last (tail) bytes of (unbounded) output in constant memory.
+ * Buffers are preallocated; the middle is discarded, and only counted.
+ * Use with {@link RunCmd#setCoutBytes(Consumer)}.
+ */
+public class HeadTailCapture implements Consumer<ByteBuffer> {
+    public HeadTailCapture(int headSize, int tailSize) {
+        invariant((0 <= headSize) && (0 <= tailSize));
+        __head = new byte[headSize];
+        __tail = new byte[tailSize];
+    }
+
+    @Override
+    public synchronized void accept(ByteBuffer buf) {
+        final int n = buf.remaining();
+        __total += n;
+        if (__headLen < __head.length) {
+            final int m = Math.min(n, __head.length - __headLen);
+            buf.get(__head, __headLen, m);
+            __headLen += m;
+        }
+        //rest goes into (ring) tail
+        int rem = buf.remaining();
+        if (0 == rem) return;
+        if (0 == __tail.length) {
+            __discarded += rem;
+            buf.position(buf.limit());
+            return;
+        }
+        if (rem > __tail.length) {
+            //only last tail.length bytes can survive
+            final int skip = rem - __tail.length;
+            __discarded += skip;
+            buf.position(buf.position() + skip);
+            rem = __tail.length;
+        }
+        //overwritten tail bytes are discarded
+        __discarded += Math.max(0, __tailLen + rem - __tail.length);
+        __tailLen = Math.min(__tail.length, __tailLen + rem);
+        while (0 < rem) {
+            final int m = Math.min(rem, __tail.length - __tailPos);
+            buf.get(__tail, __tailPos, m);
+            __tailPos = (__tailPos + m) % __tail.length;
+            rem -= m;
+        }
+    }
+
+    public synchronized byte[] getHead() {
+        return Arrays.copyOf(__head, __headLen);
+    }
+
+    /**
+     * @return tail bytes (in order).
+     */
+    public synchronized byte[] getTail() {
+        final byte[] tail = new byte[__tailLen];
+        if (0 == __tailLen) return tail;
+        final int start = (__tailPos - __tailLen + __tail.length) % __tail.length;
+        final int n = Math.min(__tailLen, __tail.length - start);
+        System.arraycopy(__tail, start, tail, 0, n);
+        System.arraycopy(__tail, 0, tail, n, __tailLen - n);
+        return tail;
+    }
+
+    public synchronized long getTotal() {
+        return __total;
+    }
+
+    /**
+     * @return number of (middle) bytes not kept.
+     */
+    public synchronized long getDiscarded() {
+        return __discarded;
+    }
+
+    public boolean isTruncated() {
+        return 0 < getDiscarded();
+    }
+
+    /**
+     * Get capture in same form as {@link Util#readFile(String, int)}.
+     * If nothing discarded, then part1 is complete output and part2 is null.
+     *
+     * @param charset decode as.
+     * @return head (part1) and tail (part2).
+     */
+    public synchronized Util.ReadFileData toReadFileData(Charset charset) {
+        final Util.ReadFileData rfd = new Util.ReadFileData();
+        if (!isTruncated()) {
+            final byte[] head = getHead(), tail = getTail();
+            final byte[] all = Arrays.copyOf(head, head.length + tail.length);
+            System.arraycopy(tail, 0, all, head.length, tail.length);
+            rfd.part1 = new String(all, charset);
+        } else {
+            rfd.part1 = new String(__head, 0, __headLen, charset);
+            rfd.part2 = new String(getTail(), charset);
+            rfd.fileSizeMB = toMega(__total);
+            rfd.truncatedToMB = toMega(__total - __discarded);
+        }
+        return rfd;
+    }
+
+    public Util.ReadFileData toReadFileData() {
+        return toReadFileData(StandardCharsets.UTF_8);
+    }
+
+    private final byte[] __head, __tail;
+    private int __headLen = 0, __tailLen = 0, __tailPos = 0;
+    private long __total = 0, __discarded = 0;
+}
@@ -28,12 +28,31 @@
 
 package gblibx;
 
-import org.json.JSONObject;
+import org.json.JSONException;
 
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -47,11 +66,30 @@ public class HttpConnection {
     public static class Exception extends java.lang.Exception {
         public Exception(int code, String message) {
             super(String.format("%d: %s", code, message));
+            this.code = code;
         }
 
         public Exception(java.io.IOException ex) {
             super(ex);
+            this.code = -1;
         }
+
+        public Exception(Throwable ex) {
+            super(ex);
+            this.code = -1;
+        }
+
+        /**
+         * @return true if failure is (likely) transient: I/O failure or one of RETRY_CODES.
+         */
+        public boolean isRetryable() {
+            return (getCause() instanceof IOException) || RETRY_CODES.contains(code);
+        }
+
+        /**
+         * HTTP response code (-1 if no response).
+         */
+        public final int code;
     }
 
     public static String encode(String in) throws UnsupportedEncodingException {
@@ -69,24 +107,15 @@ public class HttpConnection {
      * @throws Exception
      */
     public static Map<String, Object> get(String host, int port, String path, String... params) throws Exception {
+        if (USE_HTTP_CLIENT) {
+            return __join(getAsync(host, port, path, params));
+        }
         try {
-            StringBuffer npath = new StringBuffer(path);
-            {
-                char sep = '?';
-                for (String kv : params) {
-                    int eqix = kv.indexOf('=');
-                    String k = kv.substring(0, eqix);
-                    String v = encode(kv.substring(eqix + 1));
-                    npath.append(sep).append(k).append('=').append(v);
-                    sep = '&';
-                }
-            }
-            final URL url = (isNonNull(host))
-                    ? new URL("http", host, port, npath.toString())
-                    : new URL(path);
+            final URL url = toURL(host, port, path, params);
             final HttpURLConnection http = downcast(url.openConnection());
             http.setRequestMethod("GET");
             http.setRequestProperty("User-Agent", __USER_AGENT);
+            http.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
             final int responseCode = http.getResponseCode();
             final String responseMessage = http.getResponseMessage();
             switch (responseCode) {
@@ -102,6 +131,377 @@ public class HttpConnection {
         }
     }
 
+    /**
+     * GET request with response decoded as events (for large responses).
+     * Uses shared client.
+     *
+     * @param host    hostname (null if path is complete url).
+     * @param port    port.
+     * @param path    path.json.
+     * @param handler response event handler.
+     * @param params  key=val...
+     * @throws Exception
+     */
+    public static void get(String host, int port, String path, JSONStreamReader.Handler handler, String... params)
+            throws Exception {
+        final HttpRequest request;
+        try {
+            request = newRequest(toURL(host, port, path, params)).GET().build();
+        } catch (IOException | URISyntaxException ex) {
+            throw new Exception(ex);
+        }
+        __send(request, is -> {
+            getResponse(is, handler);
+            return null;
+        });
+    }
+
+    /**
+     * GET request (without blocking).
+     * Uses shared (pooled, HTTP/2 capable) client.
+     *
+     * @param host   hostname (null if path is complete url).
+     * @param port   port.
+     * @param path   path.json.
+     * @param params key=val...
+     * @return future response (completes exceptionally with HttpConnection.Exception).
+     */
+    public static CompletableFuture<Map<String, Object>> getAsync(String host, int port, String path, String... params) {
+        final HttpRequest request;
+        try {
+            request = newRequest(toURL(host, port, path, params)).GET().build();
+        } catch (IOException | URISyntaxException ex) {
+            return CompletableFuture.failedFuture(new Exception(ex));
+        }
+        return __sendAsync(request);
+    }
+
+    /**
+     * POST request (without blocking, and without retry).
+     * Uses shared (pooled, HTTP/2 capable) client.
+     *
+     * @param host hostname (can be null if path is complete url).
+     * @param port port.
+     * @param path path.json
+     * @param vals key+val set.
+     * @return future response (completes exceptionally with HttpConnection.Exception).
+     */
+    public static CompletableFuture<Map<String, Object>> postJSONAsync(String host, int port, String path,
+                                                                      Map<String, Object> vals) {
+        return __postJSONAsync(host, port, path, vals);
+    }
+
+    /**
+     * POST (JSON array) request (without blocking, and without retry).
+     *
+     * @param host hostname (can be null if path is complete url).
+     * @param port port.
+     * @param path path.json
+     * @param vals values.
+     * @return future response (array response as "data").
+     */
+    public static CompletableFuture<Map<String, Object>> postJSONAsync(String host, int port, String path,
+                                                                      List<?> vals) {
+        return __postJSONAsync(host, port, path, vals);
+    }
+
+    private static CompletableFuture<Map<String, Object>> __postJSONAsync(String host, int port, String path,
+                                                                         Object vals) {
+        final HttpRequest request;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            //small body: serialized once (fixed length); else streamed (chunked)
+            final byte[] data = JSONStreamWriter.toBytes(vals, STREAM_THRESHOLD);
+            final URL url = toURL(host, port, path);
+            final boolean gzip = isGzipRequests(url);
+            final HttpRequest.Builder builder = newRequest(url)
+                    .header("Accept-Charset", __CHARSET)
+                    .header("Content-Type", "application/json;charset=" + __CHARSET);
+            if (isNull(data)) {
+                if (gzip) builder.header("Content-Encoding", "gzip");
+                builder.POST(HttpRequest.BodyPublishers.ofInputStream(() -> __pipe(vals, gzip, failure)));
+            } else if (__isGzip(gzip, data.length)) {
+                //compressed as sent (chunked)
+                builder.header("Content-Encoding", "gzip")
+                        .POST(HttpRequest.BodyPublishers.ofInputStream(
+                                () -> new GzipCompressingInputStream(new ByteArrayInputStream(data))));
+            } else {
+                builder.POST(HttpRequest.BodyPublishers.ofByteArray(data));
+            }
+            request = builder.build();
+        } catch (IOException | URISyntaxException | JSONException ex) {
+            return CompletableFuture.failedFuture(new Exception(ex));
+        }
+        return __sendAsync(request).exceptionally(ex -> {
+            //streamed body failed (request aborted): fail with its cause
+            final Throwable cause = failure.get();
+            throw new CompletionException(isNull(cause) ? __toException(ex) : new Exception(cause));
+        });
+    }
+
+    /**
+     * Stream (JSON) body through pipe: written on pipe executor as client reads.
+     * If serialization fails, failure is set and the pipe is poisoned (reader gets IOException),
+     * so the client aborts the request rather than send a truncated body.
+     */
+    private static InputStream __pipe(Object vals, boolean gzip, AtomicReference<Throwable> failure) {
+        final BodyPipe is = new BodyPipe();
+        final PipedOutputStream os;
+        try {
+            os = new PipedOutputStream(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        __getPipeExecutor().execute(() -> {
+            try {
+                final OutputStream out = gzip ? new GZIPOutputStream(os, 8192) : os;
+                new JSONStreamWriter(out).write(vals);
+                out.close();
+            } catch (IOException e) {
+                //request abandoned (pipe closed by client)
+                __abort(is, os, e);
+            } catch (RuntimeException e) {
+                failure.set(e);
+                __abort(is, os, e);
+            }
+        });
+        return is;
+    }
+
+    private static void __abort(BodyPipe is, PipedOutputStream os, Throwable cause) {
+        is.abort(cause);
+        try {
+            os.close(); //wake reader
+        } catch (IOException e) {
+            ;//ignore
+        }
+    }
+
+    /**
+     * Pipe which fails reads once aborted (instead of end of stream).
+     */
+    private static class BodyPipe extends PipedInputStream {
+        private BodyPipe() {
+            super(STREAM_THRESHOLD);
+        }
+
+        private void abort(Throwable cause) {
+            __aborted = cause;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            __check();
+            final int c = super.read();
+            __check();
+            return c;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            __check();
+            final int n = super.read(b, off, len);
+            __check();
+            return n;
+        }
+
+        private void __check() throws IOException {
+            if (isNonNull(__aborted)) throw new IOException("request body aborted", __aborted);
+        }
+
+        private volatile Throwable __aborted = null;
+    }
+
+    /**
+     * Get executor which writes streamed bodies (created on first use).
+     * Writers block until the client reads, so not on shared (RunCmd or client) executors.
+     *
+     * @return executor.
+     */
+    private static synchronized Executor __getPipeExecutor() {
+        if (isNull(__pipeExecutor)) {
+            __pipeExecutor = Executors.newCachedThreadPool(newDaemonThreadFactory("gblibx-httpconnection-pipe"));
+        }
+        return __pipeExecutor;
+    }
+
+    /**
+     * POST request (without blocking), retried on transient failure (see {@link Exception#isRetryable()})
+     * with exponential backoff (upto POST_RETRY_TOTAL_WAIT_SEC) and within per host retry budget.
+     * No thread is held during backoff.
+     *
+     * @param host hostname (can be null if path is complete url).
+     * @param port port.
+     * @param path path.json
+     * @param vals key+val set.
+     * @return future response (completes exceptionally with (last) HttpConnection.Exception).
+     */
+    public static CompletableFuture<Map<String, Object>> postJSONRetryAsync(String host, int port, String path,
+                                                                           Map<String, Object> vals) {
+        return __postJSONRetryAsync(host, port, path, vals);
+    }
+
+    public static CompletableFuture<Map<String, Object>> postJSONRetryAsync(String host, int port, String path,
+                                                                           List<?> vals) {
+        return __postJSONRetryAsync(host, port, path, vals);
+    }
+
+    private static CompletableFuture<Map<String, Object>> __postJSONRetryAsync(String host, int port, String path,
+                                                                              Object vals) {
+        final String key;
+        try {
+            final URL url = toURL(host, port, path);
+            key = __hostPort(url);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new Exception(ex));
+        }
+        return getRetryScheduler().submit(key,
+                () -> __postJSONAsync(host, port, path, vals),
+                ex -> (ex instanceof Exception) && ((Exception) ex).isRetryable());
+    }
+
+    /**
+     * Get shared retry scheduler (created on first use).
+     *
+     * @return retry scheduler.
+     */
+    public static synchronized RetryScheduler getRetryScheduler() {
+        if (isNull(__retryScheduler)) {
+            __retryScheduler = new RetryScheduler(
+                    Duration.ofMillis(RETRY_BASE_MSEC),
+                    Duration.ofSeconds(POST_RETRY_LOOP_SEC),
+                    Duration.ofSeconds(POST_RETRY_TOTAL_WAIT_SEC),
+                    RETRY_BUDGET, RETRY_BUDGET_PER_SEC);
+        }
+        return __retryScheduler;
+    }
+
+    /**
+     * Get shared client (created on first use).
+     *
+     * @return client.
+     */
+    public static synchronized HttpClient getClient() {
+        if (isNull(__client)) {
+            __client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.valueOf(HTTP_VERSION))
+                    .connectTimeout(Duration.ofSeconds(CONNECT_TIMEOUT_SEC))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+        }
+        return __client;
+    }
+
+    /**
+     * Build url.
+     *
+     * @param host   hostname (null if path is complete url).
+     * @param port   port.
+     * @param path   path.
+     * @param params key=val... (query).
+     * @return url.
+     * @throws IOException on malformed url.
+     */
+    public static URL toURL(String host, int port, String path, String... params) throws IOException {
+        if (isNull(host)) return new URL(path);
+        final StringBuilder npath = new StringBuilder(path);
+        char sep = '?';
+        for (String kv : params) {
+            int eqix = kv.indexOf('=');
+            String k = kv.substring(0, eqix);
+            String v = encode(kv.substring(eqix + 1));
+            npath.append(sep).append(k).append('=').append(v);
+            sep = '&';
+        }
+        return new URL("http", host, port, npath.toString());
+    }
+
+    /**
+     * Create request (for shared client) with standard headers.
+     *
+     * @param url url.
+     * @return request builder.
+     * @throws URISyntaxException on malformed url.
+     */
+    public static HttpRequest.Builder newRequest(URL url) throws URISyntaxException {
+        return HttpRequest.newBuilder(url.toURI())
+                .header("User-Agent", __USER_AGENT)
+                .header("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream is) throws IOException;
+    }
+
+    /**
+     * Send request (body buffered by client: no blocking read on client threads).
+     */
+    private static CompletableFuture<Map<String, Object>> __sendAsync(HttpRequest request) {
+        return getClient()
+                .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    try {
+                        return __read(response.statusCode(), response.headers(),
+                                new ByteArrayInputStream(response.body()), HttpConnection::getResponse);
+                    } catch (IOException ex) {
+                        throw new CompletionException(new Exception(ex));
+                    } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                })
+                .exceptionally(ex -> {
+                    throw new CompletionException(__toException(ex));
+                });
+    }
+
+    /**
+     * Send request and stream body to reader (on calling thread).
+     */
+    private static <T> T __send(HttpRequest request, BodyReader<T> reader) throws Exception {
+        final HttpResponse<InputStream> response;
+        try {
+            response = getClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException ex) {
+            throw new Exception(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new Exception(ex);
+        }
+        try {
+            return __read(response.statusCode(), response.headers(), response.body(), reader);
+        } catch (IOException ex) {
+            throw new Exception(ex);
+        }
+    }
+
+    private static <T> T __read(int code, HttpHeaders headers, InputStream body, BodyReader<T> reader)
+            throws IOException, Exception {
+        try (InputStream is = decode(body, headers.firstValue("Content-Encoding").orElse(null))) {
+            switch (code) {
+                case HTTP_OK:   //fall through
+                case HTTP_CREATED:
+                    return reader.read(is);
+                default:
+                    throw new Exception(code, new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static Exception __toException(Throwable ex) {
+        final Throwable cause = (ex instanceof CompletionException && isNonNull(ex.getCause()))
+                ? ex.getCause() : ex;
+        return (cause instanceof Exception) ? (Exception) cause : new Exception(cause);
+    }
+
+    private static <T> T __join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException ex) {
+            throw __toException(ex);
+        }
+    }
+
     /**
      * POST request.
      *
@@ -127,19 +527,22 @@ public class HttpConnection {
          */
     public static Map<String, Object> postJSON(String host, int port, String path, Map<String, Object> vals)
             throws Exception {
+        if (USE_HTTP_CLIENT) {
+            return __join(postJSONRetryAsync(host, port, path, vals));
+        }
         class Sideband {
             Map<String, Object> rval = null;
             Exception ex = null;
         }
         final Sideband sb = new Sideband();
-        postJSON(host, port, path, vals, (http) -> {
+        __postJSON(host, port, path, vals, (http) -> {
             try {
                 checkResponse(http);
                 sb.rval = getResponse(http);
             } catch (IOException e) {
                 sb.ex = new Exception(e);
             }
-        });
+        }, POST_RETRY_LOOP_SEC, __POST_RETRY_NLOOP, true);
         if (isNonNull(sb.ex)) throw sb.ex;
         return sb.rval;
     }
@@ -155,17 +558,31 @@ public class HttpConnection {
     postJSON(String host, int port, String path, Map<String, Object> vals,
              Consumer<HttpURLConnection> responseHandler, int retrySleepSec, int retryNTimes)
             throws Exception {
+        __postJSON(host, port, path, vals, responseHandler, retrySleepSec, retryNTimes, false);
+    }
+
+    /**
+     * @param acceptEncoding true if responseHandler decodes (compressed) response (via getResponse).
+     */
+    private static void
+    __postJSON(String host, int port, String path, Map<String, Object> vals,
+               Consumer<HttpURLConnection> responseHandler, int retrySleepSec, int retryNTimes,
+               boolean acceptEncoding)
+            throws Exception {
         //https://stackoverflow.com/questions/3324717/sending-http-post-request-in-java
         //https://stackoverflow.com/questions/7181534/http-post-using-json-in-java
-        final JSONObject json = new JSONObject(vals);
+        //small body: serialized once (fixed length); else streamed (chunked) on each try
+        final byte[] data;
         final URL url;
         try {
             url = (isNonNull(host))
                     ? new URL("http", host, port, path)
                     : new URL(path);
-        } catch (MalformedURLException e) {
+            data = JSONStreamWriter.toBytes(vals, STREAM_THRESHOLD);
+        } catch (IOException | JSONException e) {
             throw new Exception(e);
         }
+        final boolean gzipRequests = isGzipRequests(url);
         //Well loop here with retry
         for (int nloop = retryNTimes; nloop > 0; --nloop) {
             HttpURLConnection http = null;
@@ -174,21 +591,36 @@ public class HttpConnection {
                 http.setRequestMethod("POST");
                 http.setRequestProperty("User-Agent", __USER_AGENT);
                 http.setRequestProperty("Accept-Charset", __CHARSET);
-                final byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
-                http.setFixedLengthStreamingMode(data.length);
+                if (acceptEncoding) http.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+                final boolean gzip = isNull(data) ? gzipRequests : __isGzip(gzipRequests, data.length);
+                if (gzip || isNull(data)) {
+                    http.setChunkedStreamingMode(0);
+                } else {
+                    http.setFixedLengthStreamingMode(data.length);
+                }
+                if (gzip) http.setRequestProperty("Content-Encoding", "gzip");
                 http.setDoOutput(true);
                 http.setRequestProperty("Content-Type", "application/json;charset=" + __CHARSET);
-                try (OutputStream os = http.getOutputStream()) {
-                    os.write(data);
-                    os.flush();
+                final OutputStream os = gzip ? new GZIPOutputStream(http.getOutputStream()) : http.getOutputStream();
+                try {
+                    if (isNull(data)) {
+                        new JSONStreamWriter(os).write(vals);
+                    } else {
+                        os.write(data);
+                    }
+                } catch (RuntimeException e) {
+                    //serialization failed: abort (not close, which would complete chunked body)
+                    http.disconnect();
+                    throw new Exception(e);
                 }
+                os.close();
                 responseHandler.accept(http);
                 return;
             } catch (IOException e) {
                 if (isNonNull(http)) {
                     http.disconnect();
                 }
-                if (0 >= nloop)
+                if (1 >= nloop)
                     throw new Exception(e);
             }
             try {
@@ -237,22 +669,99 @@ public class HttpConnection {
     }
 
     public static Map<String, Object> getResponse(HttpURLConnection http) throws IOException {
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(http.getInputStream()));
-        String inputLine;
-        StringBuffer response = new StringBuffer();
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+        return getResponse(decode(http.getInputStream(), http.getContentEncoding()));
+    }
+
+    /**
+     * Decode (decompress) response stream, as read.
+     *
+     * @param is              response stream.
+     * @param contentEncoding Content-Encoding: gzip, deflate (zlib or raw) or null (identity).
+     * @return decoded stream.
+     * @throws IOException on bad header or unsupported encoding.
+     */
+    public static InputStream decode(InputStream is, String contentEncoding) throws IOException {
+        if (isNull(contentEncoding)) return is;
+        switch (contentEncoding.trim().toLowerCase()) {
+            case "identity":
+                return is;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(is);
+            case "deflate":
+                //should be zlib wrapped, but some servers send raw deflate
+                final BufferedInputStream bis = new BufferedInputStream(is);
+                bis.mark(2);
+                final int b0 = bis.read(), b1 = bis.read();
+                bis.reset();
+                final boolean zlib = (0 <= b1) && (8 == (b0 & 0x0f)) && (0 == ((b0 << 8) | b1) % 31);
+                return new InflaterInputStream(bis, new Inflater(!zlib));
+            default:
+                throw new IOException("unsupported Content-Encoding: " + contentEncoding);
         }
-        in.close();
-        String str = response.toString();
-        if (!str.isEmpty() && ('{' != str.charAt(0))) {
-            //TODO: should return [] or {}.
-            //for now, everything is object/map.
-            str = "{\"data\":" + str + "}";
+    }
+
+    private static boolean __isGzip(boolean gzip, int length) {
+        return gzip && (length >= GZIP_THRESHOLD);
+    }
+
+    /**
+     * Set (override GZIP_REQUESTS) whether POST bodies to host are gzip compressed.
+     *
+     * @param host hostname.
+     * @param port port.
+     * @param gzip true to compress (bodies of at least GZIP_THRESHOLD bytes).
+     */
+    public static void setGzipRequests(String host, int port, boolean gzip) {
+        __GZIP_HOSTS.put(host + ":" + port, gzip);
+    }
+
+    /**
+     * @param url request url.
+     * @return true if POST bodies to url host are gzip compressed (see {@link #setGzipRequests}).
+     */
+    public static boolean isGzipRequests(URL url) {
+        return __GZIP_HOSTS.getOrDefault(__hostPort(url), GZIP_REQUESTS);
+    }
+
+    /**
+     * @param url url.
+     * @return host:port (default port of protocol if url has none).
+     */
+    private static String __hostPort(URL url) {
+        final int port = (0 > url.getPort()) ? url.getDefaultPort() : url.getPort();
+        return url.getHost() + ":" + port;
+    }
+
+    /**
+     * Decode (JSON) response, streaming.
+     * Non-object response is wrapped as {"data": response}; empty response is empty map.
+     *
+     * @param is response stream (closed).
+     * @return response.
+     * @throws IOException on read or syntax error.
+     */
+    public static Map<String, Object> getResponse(InputStream is) throws IOException {
+        try (InputStream in = is) {
+            final JSONStreamReader reader = new JSONStreamReader(in);
+            final int c = reader.peek();
+            if (0 > c) return new HashMap<>();
+            final Object value = reader.read();
+            return ('{' == c) ? castobj(value) : toMap("data", value);
+        }
+    }
+
+    /**
+     * Decode (JSON) response as events (no tree is built).
+     *
+     * @param is      response stream (closed).
+     * @param handler event handler.
+     * @throws IOException on read or syntax error.
+     */
+    public static void getResponse(InputStream is, JSONStreamReader.Handler handler) throws IOException {
+        try (InputStream in = is) {
+            new JSONStreamReader(in).parse(handler);
         }
-        final JSONObject json = new JSONObject(str);
-        return toMap(json);
     }
 
     private static final String __USER_AGENT = "Mozilla/5.0";
@@ -264,4 +773,54 @@ public class HttpConnection {
             Integer.parseInt(System.getProperty("gblibx.httpconnection.postRetryTotalWaitSec", "300"));
     private static final int __POST_RETRY_NLOOP =
             POST_RETRY_TOTAL_WAIT_SEC / POST_RETRY_LOOP_SEC;
+
+    /**
+     * Use (shared) HttpClient engine for get/postJSON (else HttpURLConnection per request).
+     */
+    public static final boolean USE_HTTP_CLIENT =
+            Boolean.parseBoolean(System.getProperty("gblibx.httpconnection.useHttpClient", "true"));
+    /**
+     * HttpClient.Version: HTTP_2 (default) or HTTP_1_1.
+     * HTTP_2 is negotiated (ALPN) on https, else attempted by h2c upgrade on plain http:
+     * either falls back to HTTP/1.1 if server does not support it.
+     */
+    public static final String HTTP_VERSION =
+            System.getProperty("gblibx.httpconnection.httpVersion", "HTTP_2");
+    public static final int CONNECT_TIMEOUT_SEC =
+            Integer.parseInt(System.getProperty("gblibx.httpconnection.connectTimeoutSec", "30"));
+
+    /**
+     * First retry backoff (doubled each retry, upto POST_RETRY_LOOP_SEC, with jitter).
+     */
+    public static final long RETRY_BASE_MSEC =
+            Long.parseLong(System.getProperty("gblibx.httpconnection.retryBaseMsec", "250"));
+    /**
+     * Retry budget (per host): upto RETRY_BUDGET retries, refilled at RETRY_BUDGET_PER_SEC.
+     */
+    public static final double RETRY_BUDGET =
+            Double.parseDouble(System.getProperty("gblibx.httpconnection.retryBudget", "100"));
+    public static final double RETRY_BUDGET_PER_SEC =
+            Double.parseDouble(System.getProperty("gblibx.httpconnection.retryBudgetPerSec", "10"));
+    public static final Set<Integer> RETRY_CODES = Set.of(429, 502, 503, 504);
+    /**
+     * Send (POST) bodies of at least GZIP_THRESHOLD bytes gzip compressed
+     * (off by default: server must accept Content-Encoding: gzip).
+     * Overridden per host by {@link #setGzipRequests(String, int, boolean)}.
+     */
+    public static final boolean GZIP_REQUESTS =
+            Boolean.parseBoolean(System.getProperty("gblibx.httpconnection.gzipRequests", "false"));
+    public static final int GZIP_THRESHOLD =
+            Integer.parseInt(System.getProperty("gblibx.httpconnection.gzipThreshold", "1024"));
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    /**
+     * POST bodies upto STREAM_THRESHOLD bytes are sent fixed length;
+     * larger are streamed (chunked) as serialized, in constant memory (and gzip'd if gzip requests).
+     */
+    public static final int STREAM_THRESHOLD =
+            Integer.parseInt(System.getProperty("gblibx.httpconnection.streamThreshold", "65536"));
+
+    private static final Map<String, Boolean> __GZIP_HOSTS = new ConcurrentHashMap<>();
+    private static HttpClient __client = null;
+    private static Executor __pipeExecutor = null;
+    private static RetryScheduler __retryScheduler = null;
 }
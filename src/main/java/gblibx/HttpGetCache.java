@@ -0,0 +1,440 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.util.Objects.isNull;
+
+/**
+ * Cache {@link HttpConnection#get(String, int, String, String...)} responses.
+ * <p>
+ * Entries (response bytes) are kept in memory upto maxBytes (least recently used evicted),
+ * and are fresh for ttl (or Cache-Control max-age, if given).
+ * A stale entry with ETag/Last-Modified is revalidated (If-None-Match/If-Modified-Since):
+ * a 304 response refreshes it and counts as a hit.
+ * Optionally, entries are also written to a directory (disk tier), which is read on
+ * memory miss, so the cache survives restarts.
+ * The disk tier is bounded by diskMaxBytes (least recently used files deleted);
+ * unreadable (corrupt or truncated) files are deleted and treated as misses.
+ * Each get decodes the (cached) bytes, so callers own the returned map.
+ */
+public class HttpGetCache {
+    public HttpGetCache(long maxBytes, Duration ttl) {
+        invariant(0 < maxBytes);
+        __maxBytes = maxBytes;
+        __ttl = ttl.toMillis();
+    }
+
+    /**
+     * Enable disk tier (upto DISK_MAX_BYTES).
+     *
+     * @param dir cache directory (created if needed).
+     * @return this object.
+     * @throws IOException if directory cannot be created.
+     */
+    public HttpGetCache setDiskDir(File dir) throws IOException {
+        return setDiskDir(dir, DISK_MAX_BYTES);
+    }
+
+    /**
+     * Enable disk tier.
+     * Existing files are indexed (oldest first) and evicted down to maxBytes.
+     *
+     * @param dir      cache directory (created if needed).
+     * @param maxBytes max total size of cache files.
+     * @return this object.
+     * @throws IOException if directory cannot be created (or listed).
+     */
+    public synchronized HttpGetCache setDiskDir(File dir, long maxBytes) throws IOException {
+        invariant(0 < maxBytes);
+        __dir = Files.createDirectories(dir.toPath());
+        __diskMaxBytes = maxBytes;
+        __disk.clear();
+        __diskBytes = 0;
+        try (Stream<Path> paths = Files.list(__dir)) {
+            final Path[] files = paths.toArray(Path[]::new);
+            final Map<Path, Long> mtimes = new HashMap<>();
+            for (Path p : files) mtimes.put(p, p.toFile().lastModified());
+            Arrays.sort(files, Comparator.comparingLong(mtimes::get));
+            for (Path p : files) {
+                if (p.getFileName().toString().startsWith(".tmp")) {
+                    p.toFile().delete();    //partial write
+                } else {
+                    __diskPut(p.getFileName().toString(), p.toFile().length());
+                }
+            }
+        }
+        __diskEvict();
+        return this;
+    }
+
+    /**
+     * GET request (through cache).
+     *
+     * @param host   hostname (null if path is complete url).
+     * @param port   port.
+     * @param path   path.json.
+     * @param params key=val...
+     * @return response.
+     * @throws HttpConnection.Exception
+     */
+    public Map<String, Object> get(String host, int port, String path, String... params)
+            throws HttpConnection.Exception {
+        try {
+            return getAsync(host, port, path, params).join();
+        } catch (CompletionException ex) {
+            throw (HttpConnection.Exception) ex.getCause();
+        }
+    }
+
+    /**
+     * GET request (through cache), without blocking.
+     *
+     * @param host   hostname (null if path is complete url).
+     * @param port   port.
+     * @param path   path.json.
+     * @param params key=val...
+     * @return future response (completes exceptionally with HttpConnection.Exception).
+     */
+    public CompletableFuture<Map<String, Object>> getAsync(String host, int port, String path, String... params) {
+        final HttpRequest.Builder request;
+        final String url;
+        try {
+            final URL u = HttpConnection.toURL(host, port, path, params);
+            url = u.toString();
+            request = HttpConnection.newRequest(u).GET();
+        } catch (IOException | URISyntaxException ex) {
+            return CompletableFuture.failedFuture(new HttpConnection.Exception(ex));
+        }
+        final Entry entry = __lookup(url);
+        final long now = System.currentTimeMillis();
+        if (isNonNull(entry) && (now < entry.expires)) {
+            __hits.incrementAndGet();
+            return __decode(entry);
+        }
+        if (isNonNull(entry)) {
+            if (isNonNull(entry.etag)) request.header("If-None-Match", entry.etag);
+            if (isNonNull(entry.lastModified)) request.header("If-Modified-Since", entry.lastModified);
+        }
+        return HttpConnection.getClient()
+                .sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    final int code = response.statusCode();
+                    if (HTTP_NOT_MODIFIED == code && isNonNull(entry)) {
+                        __revalidated.incrementAndGet();
+                        final Entry fresh = new Entry(url, entry.etag, entry.lastModified,
+                                __expires(response), entry.body);
+                        __put(fresh);
+                        return fresh;
+                    }
+                    if ((HTTP_OK != code) && (HTTP_CREATED != code)) {
+                        throw new CompletionException(new HttpConnection.Exception(code,
+                                new String(response.body(), StandardCharsets.UTF_8)));
+                    }
+                    __misses.incrementAndGet();
+                    final Entry fresh = new Entry(url,
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null),
+                            __expires(response), __decode(response));
+                    if (!response.headers().allValues("Cache-Control").toString().contains("no-store")) {
+                        __put(fresh);
+                    }
+                    return fresh;
+                })
+                .exceptionally(ex -> {
+                    final Throwable cause = (ex instanceof CompletionException) ? ex.getCause() : ex;
+                    throw new CompletionException((cause instanceof HttpConnection.Exception)
+                            ? cause : new HttpConnection.Exception(cause));
+                })
+                .thenCompose(this::__decode);
+    }
+
+    /**
+     * Remove all entries (memory and disk).
+     */
+    public synchronized void clear() {
+        __entries.clear();
+        __bytes = 0;
+        __disk.clear();
+        __diskBytes = 0;
+        if (isNull(__dir)) return;
+        try (Stream<Path> paths = Files.list(__dir)) {
+            paths.forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            ;//best effort
+        }
+    }
+
+    public long getHits() {
+        return __hits.get() + __revalidated.get();
+    }
+
+    public long getMisses() {
+        return __misses.get();
+    }
+
+    /**
+     * @return number of hits which needed revalidation (304).
+     */
+    public long getRevalidated() {
+        return __revalidated.get();
+    }
+
+    public long getEvictions() {
+        return __evictions.get();
+    }
+
+    public synchronized long getBytes() {
+        return __bytes;
+    }
+
+    public synchronized int size() {
+        return __entries.size();
+    }
+
+    /**
+     * @return total size of disk tier files.
+     */
+    public synchronized long getDiskBytes() {
+        return __diskBytes;
+    }
+
+    private CompletableFuture<Map<String, Object>> __decode(Entry entry) {
+        try {
+            return CompletableFuture.completedFuture(
+                    HttpConnection.getResponse(new ByteArrayInputStream(entry.body)));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new HttpConnection.Exception(ex));
+        }
+    }
+
+    /**
+     * @return (decompressed) body.
+     */
+    private static byte[] __decode(HttpResponse<byte[]> response) {
+        final String encoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        if (isNull(encoding)) return response.body();
+        try (InputStream is = HttpConnection.decode(new ByteArrayInputStream(response.body()), encoding)) {
+            return is.readAllBytes();
+        } catch (IOException ex) {
+            throw new CompletionException(new HttpConnection.Exception(ex));
+        }
+    }
+
+    private long __expires(HttpResponse<?> response) {
+        long ttl = __ttl;
+        for (String cc : response.headers().allValues("Cache-Control")) {
+            final Matcher m = __MAX_AGE.matcher(cc);
+            if (m.find()) ttl = 1000 * Long.parseLong(m.group(1));
+            if (cc.contains("no-cache")) ttl = 0;
+        }
+        return System.currentTimeMillis() + ttl;
+    }
+
+    private synchronized Entry __lookup(String url) {
+        Entry entry = __entries.get(url);
+        if (isNull(entry) && isNonNull(__dir)) {
+            final String name = __hash(url);
+            final Path path = __dir.resolve(name);
+            if (!Files.exists(path)) return null;
+            entry = __read(path);
+            if (isNonNull(entry) && entry.url.equals(url)) {
+                if (isNull(__disk.get(name))) {   //(get updates access order)
+                    __diskPut(name, path.toFile().length());
+                    __diskEvict();
+                }
+                __putMemory(entry);
+            } else {
+                __diskRemove(name);
+                entry = null;
+            }
+        }
+        return entry;
+    }
+
+    private synchronized void __put(Entry entry) {
+        __putMemory(entry);
+        if (isNonNull(__dir)) __write(entry);
+    }
+
+    private void __putMemory(Entry entry) {
+        final Entry old = __entries.put(entry.url, entry);
+        if (isNonNull(old)) __bytes -= old.size();
+        __bytes += entry.size();
+        final Iterator<Entry> iter = __entries.values().iterator();
+        while ((__bytes > __maxBytes) && iter.hasNext()) {
+            final Entry lru = iter.next();
+            iter.remove();
+            __bytes -= lru.size();
+            __evictions.incrementAndGet();
+        }
+    }
+
+    private void __write(Entry entry) {
+        final String name = __hash(entry.url);
+        final Path path = __dir.resolve(name);
+        try {
+            final Path tmp = Files.createTempFile(__dir, ".tmp", null);
+            try (DataOutputStream os = new DataOutputStream(Files.newOutputStream(tmp))) {
+                os.writeUTF(entry.url);
+                os.writeUTF(isNull(entry.etag) ? "" : entry.etag);
+                os.writeUTF(isNull(entry.lastModified) ? "" : entry.lastModified);
+                os.writeLong(entry.expires);
+                os.writeInt(entry.body.length);
+                os.write(entry.body);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            __diskPut(name, path.toFile().length());
+            __diskEvict();
+        } catch (IOException e) {
+            ;//disk tier is best effort
+        }
+    }
+
+    private void __diskPut(String name, long size) {
+        final Long old = __disk.put(name, size);
+        if (isNonNull(old)) __diskBytes -= old;
+        __diskBytes += size;
+    }
+
+    private void __diskRemove(String name) {
+        final Long old = __disk.remove(name);
+        if (isNonNull(old)) __diskBytes -= old;
+        __dir.resolve(name).toFile().delete();
+    }
+
+    private void __diskEvict() {
+        final Iterator<Map.Entry<String, Long>> iter = __disk.entrySet().iterator();
+        while ((__diskBytes > __diskMaxBytes) && iter.hasNext()) {
+            final Map.Entry<String, Long> lru = iter.next();
+            iter.remove();
+            __diskBytes -= lru.getValue();
+            __dir.resolve(lru.getKey()).toFile().delete();
+        }
+    }
+
+    /**
+     * @return entry (null if file is missing, corrupt or truncated).
+     */
+    private static Entry __read(Path path) {
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            final String url = is.readUTF(), etag = is.readUTF(), lastModified = is.readUTF();
+            final long expires = is.readLong();
+            final int length = is.readInt();
+            if (length != is.available()) return null;
+            final byte[] body = new byte[length];
+            is.readFully(body);
+            return new Entry(url, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified,
+                    expires, body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String __hash(String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sbuf = new StringBuilder(2 * digest.length);
+            for (byte b : digest) sbuf.append(String.format("%02x", b));
+            return sbuf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Entry {
+        private Entry(String url, String etag, String lastModified, long expires, byte[] body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+            this.body = body;
+        }
+
+        private long size() {
+            return body.length + 2L * url.length() + 64;
+        }
+
+        private final String url, etag, lastModified;
+        private final long expires;
+        private final byte[] body;
+    }
+
+    private static final Pattern __MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    /**
+     * Default disk tier bound (bytes).
+     */
+    public static final long DISK_MAX_BYTES =
+            Long.parseLong(System.getProperty("gblibx.HttpGetCache.diskMaxBytes", "268435456"));
+
+    private final long __maxBytes, __ttl;
+    private final LinkedHashMap<String, Entry> __entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong __hits = new AtomicLong(0), __misses = new AtomicLong(0),
+            __revalidated = new AtomicLong(0), __evictions = new AtomicLong(0);
+    /**
+     * Disk tier file name to size (access order).
+     */
+    private final LinkedHashMap<String, Long> __disk = new LinkedHashMap<>(16, 0.75f, true);
+    private Path __dir = null;
+    private long __bytes = 0, __diskBytes = 0, __diskMaxBytes;
+}
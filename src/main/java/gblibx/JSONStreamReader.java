@@ -0,0 +1,322 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gblibx.Util.castobj;
+
+/**
+ * Decode JSON directly from stream: no intermediate String/JSONObject.
+ * Values have same shapes as {@link Util#toMap(JSONObject)}: object is (Hash)Map,
+ * array is Object[], number is Integer/Long/Double, null is JSONObject.NULL.
+ * Same (lenient) syntax as org.json: unquoted strings and single quoted strings are accepted.
+ * <p>
+ * Use {@link #read()} for value, or {@link #parse(Handler)} for events (no tree built).
+ */
+public class JSONStreamReader {
+    /**
+     * Parse events.
+     */
+    public interface Handler {
+        default void startObject() {
+        }
+
+        default void key(String key) {
+        }
+
+        default void endObject() {
+        }
+
+        default void startArray() {
+        }
+
+        default void endArray() {
+        }
+
+        /**
+         * Scalar value: String, Boolean, Integer, Long, Double (or String if too large) or JSONObject.NULL.
+         *
+         * @param value scalar value.
+         */
+        default void value(Object value) {
+        }
+    }
+
+    public JSONStreamReader(InputStream is) {
+        this(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+
+    public JSONStreamReader(Reader reader) {
+        __reader = reader;
+    }
+
+    /**
+     * Read (next) value.
+     *
+     * @return value (null at end of stream).
+     * @throws IOException on read or syntax error.
+     */
+    public Object read() throws IOException {
+        final Builder builder = new Builder();
+        return parse(builder) ? builder.__value : null;
+    }
+
+    /**
+     * Parse (next) value as events.
+     *
+     * @param handler event handler.
+     * @return false at end of stream (no value).
+     * @throws IOException on read or syntax error.
+     */
+    public boolean parse(Handler handler) throws IOException {
+        if (0 > __skipWhitespace()) return false;
+        __value(handler);
+        return true;
+    }
+
+    /**
+     * Peek at next non-whitespace character.
+     *
+     * @return next character (-1 at end of stream).
+     * @throws IOException on read error.
+     */
+    public int peek() throws IOException {
+        return __skipWhitespace();
+    }
+
+    private void __value(Handler handler) throws IOException {
+        final int c = __skipWhitespace();
+        switch (c) {
+            case '{':
+                ++__pos;
+                handler.startObject();
+                if ('}' == __skipWhitespace()) {
+                    ++__pos;
+                } else {
+                    while (true) {
+                        final int q = __skipWhitespace();
+                        handler.key(('"' == q || '\'' == q) ? __string() : __unquoted());
+                        __expect(':');
+                        __value(handler);
+                        final int sep = __next();
+                        if ('}' == sep) break;
+                        if (',' != sep) throw __error("expected ',' or '}'");
+                    }
+                }
+                handler.endObject();
+                break;
+            case '[':
+                ++__pos;
+                handler.startArray();
+                if (']' == __skipWhitespace()) {
+                    ++__pos;
+                } else {
+                    while (true) {
+                        __value(handler);
+                        final int sep = __next();
+                        if (']' == sep) break;
+                        if (',' != sep) throw __error("expected ',' or ']'");
+                    }
+                }
+                handler.endArray();
+                break;
+            case '"':
+            case '\'':
+                handler.value(__string());
+                break;
+            case -1:
+                throw __error("unexpected end");
+            default:
+                handler.value(JSONObject.stringToValue(__unquoted()));
+        }
+    }
+
+    private String __string() throws IOException {
+        final char quote = __buf[__pos++];
+        __sb.setLength(0);
+        while (true) {
+            if (__pos >= __len && !__fill()) throw __error("unterminated string");
+            final char c = __buf[__pos++];
+            if (quote == c) break;
+            if ('\\' != c) {
+                __sb.append(c);
+                continue;
+            }
+            if (__pos >= __len && !__fill()) throw __error("unterminated string");
+            final char e = __buf[__pos++];
+            switch (e) {
+                case 'b':
+                    __sb.append('\b');
+                    break;
+                case 't':
+                    __sb.append('\t');
+                    break;
+                case 'n':
+                    __sb.append('\n');
+                    break;
+                case 'f':
+                    __sb.append('\f');
+                    break;
+                case 'r':
+                    __sb.append('\r');
+                    break;
+                case 'u':
+                    int u = 0;
+                    for (int i = 0; i < 4; ++i) {
+                        if (__pos >= __len && !__fill()) throw __error("unterminated string");
+                        final int d = Character.digit(__buf[__pos++], 16);
+                        if (0 > d) throw __error("bad \\u escape");
+                        u = (u << 4) | d;
+                    }
+                    __sb.append((char) u);
+                    break;
+                default:
+                    __sb.append(e);
+            }
+        }
+        return __sb.toString();
+    }
+
+    /**
+     * @return unquoted token (upto delimiter), trimmed.
+     */
+    private String __unquoted() throws IOException {
+        __sb.setLength(0);
+        while ((__pos < __len) || __fill()) {
+            final char c = __buf[__pos];
+            if (0 <= ",:]}/\\\"[{;=#".indexOf(c)) break;
+            __sb.append(c);
+            ++__pos;
+        }
+        final String token = __sb.toString().trim();
+        if (token.isEmpty()) throw __error("missing value");
+        return token;
+    }
+
+    private void __expect(char c) throws IOException {
+        if (c != __next()) throw __error(String.format("expected '%c'", c));
+    }
+
+    private int __next() throws IOException {
+        final int c = __skipWhitespace();
+        if (0 <= c) ++__pos;
+        return c;
+    }
+
+    private int __skipWhitespace() throws IOException {
+        while ((__pos < __len) || __fill()) {
+            final char c = __buf[__pos];
+            if (' ' < c) return c;
+            ++__pos;
+        }
+        return -1;
+    }
+
+    private boolean __fill() throws IOException {
+        __offset += __len;
+        __pos = 0;
+        __len = Math.max(0, __reader.read(__buf));
+        return 0 < __len;
+    }
+
+    private IOException __error(String msg) {
+        return new IOException(String.format("%s at character %d", msg, __offset + __pos));
+    }
+
+    /**
+     * Build tree of values from events.
+     */
+    private static class Builder implements Handler {
+        @Override
+        public void startObject() {
+            __stack.add(new HashMap<String, Object>());
+            __keys.add(null);
+        }
+
+        @Override
+        public void key(String key) {
+            __keys.set(__keys.size() - 1, key);
+        }
+
+        @Override
+        public void endObject() {
+            __keys.remove(__keys.size() - 1);
+            value(__stack.remove(__stack.size() - 1));
+        }
+
+        @Override
+        public void startArray() {
+            __stack.add(new ArrayList<>());
+            __keys.add(null);
+        }
+
+        @Override
+        public void endArray() {
+            __keys.remove(__keys.size() - 1);
+            final List<Object> list = castobj(__stack.remove(__stack.size() - 1));
+            value(list.toArray(new Object[0]));
+        }
+
+        @Override
+        public void value(Object value) {
+            if (__stack.isEmpty()) {
+                __value = value;
+                return;
+            }
+            final Object top = __stack.get(__stack.size() - 1);
+            if (top instanceof Map) {
+                final Map<String, Object> map = castobj(top);
+                map.put(__keys.get(__keys.size() - 1), value);
+            } else {
+                final List<Object> list = castobj(top);
+                list.add(value);
+            }
+        }
+
+        private final List<Object> __stack = new ArrayList<>();
+        private final List<String> __keys = new ArrayList<>();
+        private Object __value = null;
+    }
+
+    private final Reader __reader;
+    private final char[] __buf = new char[8192];
+    private final StringBuilder __sb = new StringBuilder();
+    private int __pos = 0, __len = 0;
+    private long __offset = 0;
+}
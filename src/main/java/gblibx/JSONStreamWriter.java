@@ -0,0 +1,222 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Write Map/Collection/array/primitive values as JSON, directly (one encoding pass) to UTF-8 stream.
+ * Output is the same as new JSONObject(map).toString(): e.g. null map values are skipped,
+ * and other objects are written as JSONObject.wrap(object).
+ */
+public class JSONStreamWriter {
+    public JSONStreamWriter(OutputStream os) {
+        this(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 8192));
+    }
+
+    public JSONStreamWriter(Writer writer) {
+        __writer = writer;
+    }
+
+    /**
+     * Write value (and flush).
+     *
+     * @param value value.
+     * @return this object.
+     * @throws IOException   on write error.
+     * @throws JSONException if value not JSON compatible (as written so far).
+     */
+    public JSONStreamWriter write(Object value) throws IOException {
+        __value(value);
+        __writer.flush();
+        return this;
+    }
+
+    /**
+     * Serialize value, if it fits.
+     *
+     * @param value value.
+     * @param limit maximum bytes.
+     * @return UTF-8 JSON, or null if longer than limit.
+     * @throws IOException   on write error.
+     * @throws JSONException if value not JSON compatible.
+     */
+    public static byte[] toBytes(Object value, int limit) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.min(limit, 1024)) {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (count + len > limit) throw __LIMIT_EXCEEDED;
+                super.write(b, off, len);
+            }
+
+            @Override
+            public synchronized void write(int b) {
+                if (count + 1 > limit) throw __LIMIT_EXCEEDED;
+                super.write(b);
+            }
+        };
+        try {
+            new JSONStreamWriter(bos).write(value);
+        } catch (LimitExceeded e) {
+            return null;
+        }
+        return bos.toByteArray();
+    }
+
+    private void __value(Object value) throws IOException {
+        if (isNull(value) || JSONObject.NULL.equals(value)) {
+            __writer.write("null");
+        } else if (value instanceof String) {
+            __string((String) value);
+        } else if (value instanceof Number) {
+            __writer.write(JSONObject.numberToString((Number) value));
+        } else if (value instanceof Boolean) {
+            __writer.write(value.toString());
+        } else if (value instanceof Map) {
+            __writer.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (isNull(e.getValue())) continue;
+                if (!first) __writer.write(',');
+                first = false;
+                __string(String.valueOf(e.getKey()));
+                __writer.write(':');
+                __value(e.getValue());
+            }
+            __writer.write('}');
+        } else if (value instanceof Collection) {
+            __writer.write('[');
+            boolean first = true;
+            for (Object e : (Collection<?>) value) {
+                if (!first) __writer.write(',');
+                first = false;
+                __value(e);
+            }
+            __writer.write(']');
+        } else if (value.getClass().isArray()) {
+            __writer.write('[');
+            for (int i = 0, n = Array.getLength(value); i < n; ++i) {
+                if (0 < i) __writer.write(',');
+                __value(Array.get(value, i));
+            }
+            __writer.write(']');
+        } else if (value instanceof JSONObject) {
+            __value(((JSONObject) value).toMap());
+        } else if (value instanceof JSONArray) {
+            __value(((JSONArray) value).toList());
+        } else if (value instanceof Enum) {
+            __string(((Enum<?>) value).name());
+        } else {
+            final Object wrapped = JSONObject.wrap(value);
+            if (isNull(wrapped)) throw new JSONException("not JSON compatible: " + value.getClass().getName());
+            //bean (as JSONObject) or string
+            __writer.write(wrapped instanceof JSONObject ? wrapped.toString() : JSONObject.quote(wrapped.toString()));
+        }
+    }
+
+    /**
+     * Quote string (same escapes as JSONObject.quote).
+     */
+    private void __string(String s) throws IOException {
+        __writer.write('"');
+        char prev = 0;
+        int start = 0;
+        final int n = s.length();
+        for (int i = 0; i < n; ++i) {
+            final char c = s.charAt(i);
+            final String esc;
+            switch (c) {
+                case '"':
+                    esc = "\\\"";
+                    break;
+                case '\\':
+                    esc = "\\\\";
+                    break;
+                case '/':
+                    esc = ('<' == prev) ? "\\/" : null;
+                    break;
+                case '\b':
+                    esc = "\\b";
+                    break;
+                case '\t':
+                    esc = "\\t";
+                    break;
+                case '\n':
+                    esc = "\\n";
+                    break;
+                case '\f':
+                    esc = "\\f";
+                    break;
+                case '\r':
+                    esc = "\\r";
+                    break;
+                default:
+                    esc = ((c < ' ') || ((c >= '\u0080') && (c < '\u00a0')) || ((c >= '\u2000') && (c < '\u2100')))
+                            ? String.format("\\u%04x", (int) c)
+                            : null;
+            }
+            prev = c;
+            if (isNull(esc)) continue;
+            __writer.write(s, start, i - start);
+            __writer.write(esc);
+            start = i + 1;
+        }
+        __writer.write(s, start, n - start);
+        __writer.write('"');
+    }
+
+    /**
+     * Stackless (shared) sentinel: thrown to stop serialization at limit.
+     */
+    private static class LimitExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private LimitExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final LimitExceeded __LIMIT_EXCEEDED = new LimitExceeded();
+
+    private final Writer __writer;
+}
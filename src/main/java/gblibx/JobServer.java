@@ -0,0 +1,466 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static gblibx.Util.toMap;
+import static java.util.Objects.isNull;
+
+/**
+ * Distribute commands to (pull-based) worker JVMs ({@link JobWorker}) over HTTP/JSON.
+ * <p>
+ * Endpoints (all POST, JSON body and response):
+ * <ul>
+ *     <li>/submit.json {cmd:[argv...]} : {id}</li>
+ *     <li>/status.json {id} : {id, state[, result...]}</li>
+ *     <li>/pull.json {worker, max} : {jobs:[{id, cmd}...]} (long poll upto PULL_WAIT_MSEC)</li>
+ *     <li>/result.json {worker, id, exitValue, exitType, cout, cerr}</li>
+ *     <li>/heartbeat.json {worker}</li>
+ * </ul>
+ * A worker not heard from (pull/result/heartbeat) within worker timeout is declared dead,
+ * and its (leased) jobs are requeued (upto MAX_ATTEMPTS).
+ * Only the last MAX_COMPLETED completed jobs are kept (for status).
+ * <p>
+ * By default, the server only listens on the loopback address.
+ * A shared token is always required: every request must include it (as "token" in the JSON body),
+ * else it is rejected (403).
+ * The default token ({@link #getToken()}) is property gblibx.JobServer.token, else read from
+ * TOKEN_FILE (created with a random token, readable only by owner, if it does not exist):
+ * so workers of the same user (and home) share it without configuration.
+ * NOTE: the token is sent in clear text (use a trusted network).
+ */
+public class JobServer {
+    public static enum State {
+        eQueued, eLeased, eDone, eFailed
+    }
+
+    public static class Result {
+        public final long id;
+        public final int exitValue, attempts;
+        /**
+         * {@link RunCmd.ExitType} name, or "eLost" if no worker completed job.
+         */
+        public final String exitType, worker, cout, cerr;
+
+        private Result(long id, Map<String, Object> vals, int attempts) {
+            this.id = id;
+            this.attempts = attempts;
+            this.exitValue = ((Number) vals.getOrDefault("exitValue", -1)).intValue();
+            this.exitType = (String) vals.getOrDefault("exitType", RunCmd.ExitType.eUnknown.name());
+            this.worker = (String) vals.get("worker");
+            this.cout = (String) vals.getOrDefault("cout", "");
+            this.cerr = (String) vals.getOrDefault("cerr", "");
+        }
+
+        public boolean isSuccess() {
+            return RunCmd.ExitType.eNormal.name().equals(exitType) && (0 == exitValue);
+        }
+    }
+
+    /**
+     * Create server (on loopback address).
+     *
+     * @param port port to listen on (0 for any free port).
+     * @throws IOException on failure to bind.
+     */
+    public JobServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), getToken());
+    }
+
+    /**
+     * Create server.
+     *
+     * @param bind  address (and port) to listen on.
+     * @param token shared token required of requests.
+     * @throws IOException on failure to bind.
+     */
+    public JobServer(InetSocketAddress bind, String token) throws IOException {
+        invariant(isNonNull(token) && !token.isEmpty(), "token required");
+        __token = token.getBytes(StandardCharsets.UTF_8);
+        __server = HttpServer.create(bind, 0);
+        __server.createContext("/submit.json", ex -> __handle(ex, this::__submit));
+        __server.createContext("/status.json", ex -> __handle(ex, this::__status));
+        __server.createContext("/pull.json", ex -> __handle(ex, this::__pull));
+        __server.createContext("/result.json", ex -> __handle(ex, this::__result));
+        __server.createContext("/heartbeat.json", ex -> __handle(ex, this::__heartbeat));
+        __server.setExecutor(__executor);
+    }
+
+    /**
+     * Set time after which silent worker is declared dead (default WORKER_TIMEOUT_MSEC).
+     *
+     * @param timeout worker timeout.
+     * @return this object.
+     */
+    public JobServer setWorkerTimeout(Duration timeout) {
+        invariant(isNull(__reaper), "already started");
+        __workerTimeout = timeout.toMillis();
+        return this;
+    }
+
+    public JobServer start() {
+        __server.start();
+        __reaper = RunCmd.getWatchdog().scheduleAtFixedRate(this::__reap,
+                __workerTimeout / 2, __workerTimeout / 2, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public void stop() {
+        if (isNull(__reaper)) return;
+        __reaper.cancel(false);
+        __server.stop(0);
+        __executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return __server.getAddress().getPort();
+    }
+
+    /**
+     * Submit command.
+     *
+     * @param argv command.
+     * @return result (when some worker completes command).
+     */
+    public CompletableFuture<Result> submit(String... argv) {
+        return __add(Arrays.asList(argv)).future;
+    }
+
+    /**
+     * Get state of job.
+     *
+     * @param id job id.
+     * @return state.
+     * @throws RuntimeException if job unknown (or completed and no longer kept).
+     */
+    public synchronized State getState(long id) {
+        final Job job = __jobs.get(id);
+        invariant(!isNull(job), "unknown job");
+        return job.state;
+    }
+
+    /**
+     * @return number of (kept) jobs by state.
+     */
+    public synchronized Map<State, Integer> getCounts() {
+        final Map<State, Integer> counts = new LinkedHashMap<>();
+        for (State state : State.values()) counts.put(state, 0);
+        __jobs.values().forEach(job -> counts.merge(job.state, 1, Integer::sum));
+        return counts;
+    }
+
+    /**
+     * @return live workers (id) and their leased job count.
+     */
+    public synchronized Map<String, Integer> getWorkers() {
+        final Map<String, Integer> workers = new LinkedHashMap<>();
+        __workers.forEach((id, worker) -> workers.put(id, worker.leased.size()));
+        return workers;
+    }
+
+    private synchronized Job __add(List<String> argv) {
+        invariant(!argv.isEmpty());
+        final Job job = new Job(++__lastId, argv);
+        __jobs.put(job.id, job);
+        __queue.addLast(job);
+        notifyAll();
+        return job;
+    }
+
+    /**
+     * Complete job, and forget oldest completed jobs (beyond MAX_COMPLETED).
+     */
+    private void __complete(Job job, State state, Result result) {
+        job.state = state;
+        job.future.complete(result);
+        __completed.addLast(job.id);
+        while (__completed.size() > MAX_COMPLETED) __jobs.remove(__completed.removeFirst());
+    }
+
+    private Map<String, Object> __submit(Map<String, Object> req) {
+        final List<String> argv = new ArrayList<>();
+        for (Object arg : (Object[]) req.get("cmd")) argv.add(arg.toString());
+        return toMap("id", __add(argv).id);
+    }
+
+    private synchronized Map<String, Object> __status(Map<String, Object> req) {
+        final long id = ((Number) req.get("id")).longValue();
+        final Job job = __jobs.get(id);
+        invariant(!isNull(job), "unknown job");
+        final Map<String, Object> rval = new HashMap<>();
+        rval.put("id", id);
+        rval.put("state", job.state.name());
+        if (job.future.isDone()) {
+            final Result result = job.future.join();
+            rval.put("exitValue", result.exitValue);
+            rval.put("exitType", result.exitType);
+            rval.put("cout", result.cout);
+            rval.put("cerr", result.cerr);
+        }
+        return rval;
+    }
+
+    private synchronized Map<String, Object> __pull(Map<String, Object> req) throws InterruptedException {
+        final Worker worker = __touch(req);
+        final int max = ((Number) req.getOrDefault("max", 1)).intValue();
+        final long until = System.currentTimeMillis() + Math.min(PULL_WAIT_MSEC, __workerTimeout / 3);
+        long wait;
+        while (__queue.isEmpty() && (0 < (wait = until - System.currentTimeMillis()))) {
+            wait(wait);
+        }
+        final List<Map<String, Object>> jobs = new LinkedList<>();
+        while (!__queue.isEmpty() && (jobs.size() < max)) {
+            final Job job = __queue.removeFirst();
+            job.state = State.eLeased;
+            job.worker = worker.id;
+            ++job.attempts;
+            worker.leased.put(job.id, job);
+            jobs.add(toMap("id", job.id, "cmd", job.argv));
+        }
+        worker.lastSeen = System.currentTimeMillis();
+        return toMap("jobs", jobs);
+    }
+
+    private synchronized Map<String, Object> __result(Map<String, Object> req) {
+        final Worker worker = __touch(req);
+        final long id = ((Number) req.get("id")).longValue();
+        final Job job = worker.leased.remove(id);
+        //late result from worker presumed dead (job requeued/done elsewhere): drop
+        if (isNull(job)) return toMap("accepted", false);
+        __complete(job, State.eDone, new Result(id, req, job.attempts));
+        return toMap("accepted", true);
+    }
+
+    private synchronized Map<String, Object> __heartbeat(Map<String, Object> req) {
+        __touch(req);
+        return toMap("ok", true);
+    }
+
+    private Worker __touch(Map<String, Object> req) {
+        final String id = (String) req.get("worker");
+        invariant(!isNull(id), "missing worker");
+        final Worker worker = __workers.computeIfAbsent(id, Worker::new);
+        worker.lastSeen = System.currentTimeMillis();
+        return worker;
+    }
+
+    private synchronized void __reap() {
+        final long deadline = System.currentTimeMillis() - __workerTimeout;
+        final List<Worker> dead = new LinkedList<>();
+        __workers.values().forEach(worker -> {
+            if (worker.lastSeen < deadline) dead.add(worker);
+        });
+        for (Worker worker : dead) {
+            __workers.remove(worker.id);
+            for (Job job : worker.leased.values()) {
+                if (job.attempts < MAX_ATTEMPTS) {
+                    job.state = State.eQueued;
+                    job.worker = null;
+                    __queue.addFirst(job);
+                } else {
+                    __complete(job, State.eFailed, new Result(job.id,
+                            toMap("exitType", "eLost", "worker", worker.id), job.attempts));
+                }
+            }
+        }
+        if (!dead.isEmpty()) notifyAll();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Map<String, Object> apply(Map<String, Object> req) throws java.lang.Exception;
+    }
+
+    private void __handle(HttpExchange exchange, Handler handler) throws IOException {
+        int code = 200;
+        String resp;
+        try (InputStream is = HttpConnection.decode(exchange.getRequestBody(),
+                exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            final String body = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            final Map<String, Object> req = body.isEmpty() ? new HashMap<>() : toMap(new JSONObject(body));
+            if (__isAuthorized(req.remove("token"))) {
+                resp = new JSONObject(handler.apply(req)).toString();
+            } else {
+                code = 403;
+                resp = new JSONObject(toMap("error", "invalid token")).toString();
+            }
+        } catch (java.lang.Exception ex) {
+            code = 400;
+            resp = new JSONObject(toMap("error", String.valueOf(ex.getMessage()))).toString();
+        }
+        final byte[] data = resp.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data);
+        }
+    }
+
+    private boolean __isAuthorized(Object token) {
+        return (token instanceof String)
+                && MessageDigest.isEqual(__token, ((String) token).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get default shared token (of server and workers): property gblibx.JobServer.token,
+     * else content of TOKEN_FILE (which is created, with random token, if it does not exist).
+     *
+     * @return token.
+     * @throws IOException on failure to read/create TOKEN_FILE.
+     */
+    public static synchronized String getToken() throws IOException {
+        if (isNull(__defaultToken)) {
+            __defaultToken = isNonNull(TOKEN) ? TOKEN : __readOrCreate(Paths.get(TOKEN_FILE));
+        }
+        return __defaultToken;
+    }
+
+    private static String __readOrCreate(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            final Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            final byte[] random = new byte[32];
+            __RANDOM.nextBytes(random);
+            //write (owner only) temporary, then link: so concurrent creators agree on one token.
+            final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            try {
+                Files.writeString(tmp, Base64.getUrlEncoder().withoutPadding().encodeToString(random));
+                Files.createLink(file, tmp);
+            } catch (FileAlreadyExistsException ex) {
+                ;//created by another
+            } finally {
+                Files.delete(tmp);
+            }
+        }
+        final String token = Files.readString(file).trim();
+        invariant(!token.isEmpty(), file + ": empty token");
+        return token;
+    }
+
+    private static class Job {
+        private Job(long id, List<String> argv) {
+            this.id = id;
+            this.argv = argv;
+        }
+
+        private final long id;
+        private final List<String> argv;
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        private State state = State.eQueued;
+        private String worker = null;
+        private int attempts = 0;
+    }
+
+    private static class Worker {
+        private Worker(String id) {
+            this.id = id;
+        }
+
+        private final String id;
+        private final Map<Long, Job> leased = new HashMap<>();
+        private long lastSeen = System.currentTimeMillis();
+    }
+
+    /**
+     * Start server: port [bind-address].
+     * Token is {@link #getToken()}.
+     *
+     * @param argv port [bind-address].
+     * @throws IOException on failure to bind.
+     */
+    public static void main(String[] argv) throws IOException {
+        final int port = (0 < argv.length) ? Integer.parseInt(argv[0]) : 0;
+        final JobServer server = ((1 < argv.length)
+                ? new JobServer(new InetSocketAddress(argv[1], port), getToken())
+                : new JobServer(port)).start();
+        System.out.printf("JobServer: listening on %s\n", server.__server.getAddress());
+    }
+
+    public static final long WORKER_TIMEOUT_MSEC =
+            Long.parseLong(System.getProperty("gblibx.JobServer.workerTimeoutMsec", "30000"));
+    public static final long PULL_WAIT_MSEC =
+            Long.parseLong(System.getProperty("gblibx.JobServer.pullWaitMsec", "5000"));
+    public static final int MAX_ATTEMPTS =
+            Integer.parseInt(System.getProperty("gblibx.JobServer.maxAttempts", "3"));
+    public static final int MAX_COMPLETED =
+            Integer.parseInt(System.getProperty("gblibx.JobServer.maxCompleted", "10000"));
+    /**
+     * Shared token (of server and workers): null to use TOKEN_FILE.
+     */
+    public static final String TOKEN = System.getProperty("gblibx.JobServer.token");
+    public static final String TOKEN_FILE = System.getProperty("gblibx.JobServer.tokenFile",
+            Paths.get(System.getProperty("user.home"), ".gblibx", "jobserver.token").toString());
+
+    private static final SecureRandom __RANDOM = new SecureRandom();
+    private static String __defaultToken = null;
+
+    private final HttpServer __server;
+    private final ExecutorService __executor = Executors.newCachedThreadPool(Util.newDaemonThreadFactory("JobServer"));
+    private final byte[] __token;
+    private final Map<Long, Job> __jobs = new HashMap<>();
+    private final LinkedList<Long> __completed = new LinkedList<>();
+    private final LinkedList<Job> __queue = new LinkedList<>();
+    private final Map<String, Worker> __workers = new LinkedHashMap<>();
+    private ScheduledFuture<?> __reaper = null;
+    private long __workerTimeout = WORKER_TIMEOUT_MSEC;
+    private long __lastId = 0;
+}
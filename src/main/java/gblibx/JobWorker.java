@@ -0,0 +1,215 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gblibx.Util.castobj;
+import static gblibx.Util.toMap;
+import static java.util.Objects.isNull;
+
+/**
+ * Worker (JVM) which pulls commands from {@link JobServer}, runs upto parallelism of them
+ * concurrently, and posts back each result (as completed) and periodic heartbeats.
+ * <p>
+ * Run standalone: java [-Dgblibx.JobServer.token=...] gblibx.JobWorker host port [parallelism]
+ */
+public class JobWorker {
+    public JobWorker(String host, int port, int parallelism) {
+        __host = host;
+        __port = port;
+        __slots = new Semaphore(parallelism);
+        __id = String.format("%s:%d:%d", __hostname(), ProcessHandle.current().pid(), __N.incrementAndGet());
+    }
+
+    /**
+     * Set heartbeat period (default: JobServer.WORKER_TIMEOUT_MSEC / 3).
+     *
+     * @param period heartbeat period.
+     * @return this object.
+     */
+    public JobWorker setHeartbeat(Duration period) {
+        __heartbeatMsec = period.toMillis();
+        return this;
+    }
+
+    /**
+     * Set shared token sent to server (default {@link JobServer#getToken()}).
+     *
+     * @param token token (null for default).
+     * @return this object.
+     */
+    public JobWorker setToken(String token) {
+        __token = token;
+        return this;
+    }
+
+    public String getId() {
+        return __id;
+    }
+
+    /**
+     * Pull and run jobs until stopped (or server unreachable).
+     *
+     * @throws HttpConnection.Exception if server unreachable (after retries).
+     */
+    public void run() throws HttpConnection.Exception {
+        __heartbeat.scheduleAtFixedRate(this::__beat,
+                0, __heartbeatMsec, TimeUnit.MILLISECONDS);
+        try {
+            while (!__stopped) {
+                __slots.acquireUninterruptibly();
+                if (__stopped) break;
+                final int max = 1 + __slots.drainPermits();
+                final Map<String, Object> resp = __post("/pull.json", "worker", __id, "max", max);
+                final Object[] jobs = (Object[]) resp.get("jobs");
+                __slots.release(max - jobs.length);
+                for (Object job : jobs) __run(castobj(job));
+            }
+        } finally {
+            __heartbeat.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop pulling jobs (running jobs continue).
+     */
+    public void stop() {
+        __stopped = true;
+    }
+
+    /**
+     * Kill worker: stop pulling, heartbeats and results (as if JVM died).
+     */
+    public void kill() {
+        stop();
+        __killed = true;
+        __heartbeat.shutdownNow();
+    }
+
+    public int getCompleted() {
+        return __completed.get();
+    }
+
+    private void __run(Map<String, Object> job) {
+        final Object[] cmd = (Object[]) job.get("cmd");
+        final String[] argv = new String[cmd.length];
+        for (int i = 0; i < argv.length; ++i) argv[i] = cmd[i].toString();
+        final HeadTailCapture cout = new HeadTailCapture(OUTPUT_HEAD, OUTPUT_TAIL);
+        final HeadTailCapture cerr = new HeadTailCapture(OUTPUT_HEAD, OUTPUT_TAIL);
+        final RunCmd rcmd = new RunCmd(argv).setCoutBytes(cout).setCerrBytes(cerr);
+        rcmd.start().whenCompleteAsync((exitValue, ex) -> {
+            try {
+                if (__killed) return;
+                __completed.incrementAndGet();
+                __post("/result.json",
+                        "worker", __id,
+                        "id", job.get("id"),
+                        "exitValue", rcmd.getExitValue(),
+                        "exitType", rcmd.getExitType().name(),
+                        "cout", __toString(cout),
+                        "cerr", __toString(cerr));
+            } catch (HttpConnection.Exception e) {
+                Util.logException(e);
+            } finally {
+                __slots.release();
+            }
+        }, RunCmd.getDefaultExecutor());
+    }
+
+    private void __beat() {
+        try {
+            __post("/heartbeat.json", "worker", __id);
+        } catch (HttpConnection.Exception e) {
+            ;//server will reap if we stay unreachable
+        }
+    }
+
+    private Map<String, Object> __post(String path, Object... keyVals) throws HttpConnection.Exception {
+        final Map<String, Object> req = toMap(keyVals);
+        try {
+            req.put("token", isNull(__token) ? JobServer.getToken() : __token);
+        } catch (IOException e) {
+            throw new HttpConnection.Exception(e);
+        }
+        return HttpConnection.postJSON(__host, __port, path, req);
+    }
+
+    private static String __toString(HeadTailCapture capture) {
+        final Util.ReadFileData rfd = capture.toReadFileData();
+        return isNull(rfd.part2) ? rfd.part1 : rfd.part1 + "\n...\n" + rfd.part2;
+    }
+
+    private static String __hostname() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Start worker: host port [parallelism].
+     *
+     * @param argv host port [parallelism].
+     * @throws HttpConnection.Exception if server unreachable.
+     */
+    public static void main(String[] argv) throws HttpConnection.Exception {
+        final int parallelism = (2 < argv.length)
+                ? Integer.parseInt(argv[2])
+                : Runtime.getRuntime().availableProcessors();
+        new JobWorker(argv[0], Integer.parseInt(argv[1]), parallelism).run();
+    }
+
+    /**
+     * Bytes of (each) head and tail of job stdout/stderr returned to server.
+     */
+    public static final int OUTPUT_HEAD = Integer.parseInt(System.getProperty("gblibx.JobWorker.outputHead", "65536"));
+    public static final int OUTPUT_TAIL = Integer.parseInt(System.getProperty("gblibx.JobWorker.outputTail", "65536"));
+
+    private static final AtomicInteger __N = new AtomicInteger(0);
+
+    private final String __host, __id;
+    private final int __port;
+    private final Semaphore __slots;
+    private final AtomicInteger __completed = new AtomicInteger(0);
+    private final ScheduledExecutorService __heartbeat =
+            Executors.newSingleThreadScheduledExecutor(Util.newDaemonThreadFactory("JobWorker"));
+    private long __heartbeatMsec = JobServer.WORKER_TIMEOUT_MSEC / 3;
+    private String __token = null;
+    private volatile boolean __stopped = false, __killed = false;
+}
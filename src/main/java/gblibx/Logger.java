@@ -32,6 +32,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import static gblibx.Util.*;
 
@@ -137,7 +138,7 @@ public abstract class Logger {
     protected synchronized Logger _print(ELevel svr, String msg, Iterable<Print> oses) {
         __msgCnts.put(svr, 1 + getMessageCount(svr));
         if (doLogMessage(svr)) {
-            final String fmsg = getMessage(svr, msg);
+            final String fmsg = getMessage(svr, (__includeCaller) ? (getCaller(__IS_LOGGER) + ": " + msg) : msg);
             for (Print os : oses) {
                 if (isNonNull(os)) {
                     os.print(svr, fmsg);
@@ -151,6 +152,28 @@ public abstract class Logger {
         return _print(svr, msg, toList(oses));
     }
 
+    /**
+     * Prefix messages with caller location (Class.method:line).
+     * Caller is first frame outside of logger classes.
+     *
+     * @param includeCaller true to add caller location.
+     * @return previous value.
+     */
+    public boolean setIncludeCaller(boolean includeCaller) {
+        final boolean was = __includeCaller;
+        __includeCaller = includeCaller;
+        return was;
+    }
+
+    private static final Predicate<Class<?>> __IS_LOGGER = (cls) -> {
+        final Class<?> host = cls.getNestHost(); //so inner classes of loggers are skipped too
+        return Logger.class.isAssignableFrom(host)
+                || Print.class.isAssignableFrom(host)
+                || MessageManager.class.isAssignableFrom(host)
+                || host.getName().startsWith("java.util.logging.");
+    };
+
+    private boolean __includeCaller = false;
     private Instant __started;
     private ELevel __level = ELevel.eInfo;
 
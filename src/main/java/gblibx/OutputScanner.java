@@ -0,0 +1,316 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static gblibx.Util.invariant;
+import static java.util.Objects.isNull;
+
+/**
+ * Classify (command) output against many patterns in one pass.
+ * Literals are compiled into a single (Aho-Corasick) automaton which scans raw bytes;
+ * regexes are compiled into a single alternation, applied once per line.
+ * Matches are dispatched per line, in column order.
+ * Use with {@link RunCmd#setCoutBytes(Consumer)}: the last (unterminated) line
+ * is flushed on {@link #close()}.
+ * <p>
+ * NOTE: at any one position only the first matching regex (in add order) is reported;
+ * and, since regexes are combined, they must not use numbered back references.
+ */
+public class OutputScanner implements Consumer<ByteBuffer>, AutoCloseable {
+    public static class Match {
+        /**
+         * Name of matched pattern.
+         */
+        public final String name;
+        /**
+         * Line (from 1) and column (byte offset in line, from 1).
+         */
+        public final long line;
+        public final int column;
+        public final String text, lineText;
+
+        private Match(String name, long line, int column, String text, String lineText) {
+            this.name = name;
+            this.line = line;
+            this.column = column;
+            this.text = text;
+            this.lineText = lineText;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%d:%d: %s", name, line, column, text);
+        }
+    }
+
+    /**
+     * Add literal pattern.
+     *
+     * @param name    pattern name.
+     * @param literal literal (not containing newline).
+     * @param onMatch handler.
+     * @return this object.
+     */
+    public OutputScanner addLiteral(String name, String literal, Consumer<Match> onMatch) {
+        invariant(isNull(__delta), "already compiled");
+        invariant(!literal.isEmpty() && (0 > literal.indexOf('\n')));
+        __literals.add(new Entry(name, literal, onMatch));
+        __counts.putIfAbsent(name, 0L);
+        return this;
+    }
+
+    /**
+     * Add regex pattern (matched within a line).
+     *
+     * @param name    pattern name.
+     * @param regex   regular expression.
+     * @param onMatch handler.
+     * @return this object.
+     */
+    public OutputScanner addRegex(String name, String regex, Consumer<Match> onMatch) {
+        invariant(isNull(__delta), "already compiled");
+        Pattern.compile(regex); //validate early
+        __regexes.add(new Entry(name, regex, onMatch));
+        __counts.putIfAbsent(name, 0L);
+        return this;
+    }
+
+    /**
+     * Compile patterns (done implicitly on first scan).
+     *
+     * @return this object.
+     */
+    public synchronized OutputScanner compile() {
+        if (isNull(__delta)) {
+            __compileLiterals();
+            __compileRegexes();
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void accept(ByteBuffer buf) {
+        compile();
+        while (buf.hasRemaining()) {
+            final byte b = buf.get();
+            if ('\n' == b) {
+                __endLine();
+                continue;
+            }
+            if (__lineLen < __line.length) {
+                __line[__lineLen] = b;
+            } else if (__lineLen < MAX_LINE) {
+                __line = Arrays.copyOf(__line, Math.min(MAX_LINE, 2 * __line.length));
+                __line[__lineLen] = b;
+            }
+            ++__lineLen;
+            __state = __delta[__state][b & 0xff];
+            for (int id : __outputs[__state]) {
+                __pending.add(new int[]{id, __lineLen - __literals.get(id).bytes.length});
+            }
+        }
+    }
+
+    /**
+     * Flush last (unterminated) line.
+     */
+    @Override
+    public synchronized void close() {
+        if (0 < __lineLen) __endLine();
+    }
+
+    /**
+     * @return number of matches by pattern name.
+     */
+    public synchronized Map<String, Long> getCounts() {
+        return new LinkedHashMap<>(__counts);
+    }
+
+    public synchronized long getLineCount() {
+        return __lineNo;
+    }
+
+    private void __endLine() {
+        ++__lineNo;
+        __state = 0;
+        int len = Math.min(__lineLen, __line.length);
+        if ((0 < len) && ('\r' == __line[len - 1])) --len;
+        __lineLen = 0;
+        if (__pending.isEmpty() && isNull(__regex)) return;
+        final String lineText = new String(__line, 0, len, StandardCharsets.UTF_8);
+        final List<Object[]> matches = new ArrayList<>();
+        for (int[] m : __pending) {
+            final Entry e = __literals.get(m[0]);
+            matches.add(new Object[]{e, m[1] + 1, e.pattern});
+        }
+        __pending.clear();
+        if (!isNull(__regex)) {
+            final Matcher matcher = __regex.matcher(lineText);
+            while (matcher.find()) {
+                int group = 1;
+                while (isNull(matcher.group(group))) ++group;
+                final int column = lineText.substring(0, matcher.start())
+                        .getBytes(StandardCharsets.UTF_8).length + 1;
+                matches.add(new Object[]{__groups.get(group), column, matcher.group()});
+            }
+        }
+        matches.sort(Comparator.comparingInt(m -> (Integer) m[1]));
+        for (Object[] m : matches) {
+            final Entry e = (Entry) m[0];
+            __counts.merge(e.name, 1L, Long::sum);
+            if (!isNull(e.onMatch)) {
+                e.onMatch.accept(new Match(e.name, __lineNo, (Integer) m[1], (String) m[2], lineText));
+            }
+        }
+    }
+
+    /**
+     * Build goto/fail (trie) then fold into complete (byte) transition table,
+     * so scanning is exactly one table lookup per byte.
+     */
+    private void __compileLiterals() {
+        final List<int[]> trie = new ArrayList<>();
+        final List<int[]> outputs = new ArrayList<>();
+        trie.add(__newState());
+        outputs.add(new int[0]);
+        for (int id = 0; id < __literals.size(); ++id) {
+            int s = 0;
+            for (byte b : __literals.get(id).bytes) {
+                final int c = b & 0xff;
+                if (0 > trie.get(s)[c]) {
+                    trie.get(s)[c] = trie.size();
+                    trie.add(__newState());
+                    outputs.add(new int[0]);
+                }
+                s = trie.get(s)[c];
+            }
+            outputs.set(s, __append(outputs.get(s), id));
+        }
+        final int n = trie.size();
+        final int[] fail = new int[n];
+        __delta = new int[n][];
+        __outputs = new int[n][];
+        __delta[0] = trie.get(0);
+        __outputs[0] = outputs.get(0);
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 256; ++c) {
+            final int t = __delta[0][c];
+            if (0 > t) {
+                __delta[0][c] = 0;
+            } else {
+                fail[t] = 0;
+                queue.add(t);
+            }
+        }
+        //breadth-first: fail state is always shallower, hence already complete
+        while (!queue.isEmpty()) {
+            final int s = queue.remove();
+            __delta[s] = trie.get(s);
+            __outputs[s] = outputs.get(s);
+            for (int id : __outputs[fail[s]]) __outputs[s] = __append(__outputs[s], id);
+            for (int c = 0; c < 256; ++c) {
+                final int t = __delta[s][c];
+                if (0 > t) {
+                    __delta[s][c] = __delta[fail[s]][c];
+                } else {
+                    fail[t] = __delta[fail[s]][c];
+                    queue.add(t);
+                }
+            }
+        }
+    }
+
+    private void __compileRegexes() {
+        if (__regexes.isEmpty()) return;
+        final StringBuilder alt = new StringBuilder();
+        __groups.add(null); //group 0
+        for (Entry e : __regexes) {
+            if (0 < alt.length()) alt.append('|');
+            alt.append('(').append(e.pattern).append(')');
+            __groups.add(e);
+            //nested (capturing) groups shift numbering: map them to same entry
+            final int nested = Pattern.compile(e.pattern).matcher("").groupCount();
+            for (int i = 0; i < nested; ++i) __groups.add(e);
+        }
+        __regex = Pattern.compile(alt.toString());
+    }
+
+    private static int[] __newState() {
+        final int[] state = new int[256];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] __append(int[] a, int v) {
+        final int[] b = Arrays.copyOf(a, a.length + 1);
+        b[a.length] = v;
+        return b;
+    }
+
+    private static class Entry {
+        private Entry(String name, String pattern, Consumer<Match> onMatch) {
+            this.name = name;
+            this.pattern = pattern;
+            this.onMatch = onMatch;
+            this.bytes = pattern.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private final String name, pattern;
+        private final Consumer<Match> onMatch;
+        private final byte[] bytes;
+    }
+
+    /**
+     * Longest line (in bytes) buffered for regex matching/reporting; literals are matched beyond.
+     */
+    public static final int MAX_LINE = Integer.parseInt(System.getProperty("gblibx.OutputScanner.maxLine", "1048576"));
+
+    private final List<Entry> __literals = new ArrayList<>(), __regexes = new ArrayList<>();
+    private final List<Entry> __groups = new ArrayList<>();
+    private final Map<String, Long> __counts = new LinkedHashMap<>();
+    private final List<int[]> __pending = new ArrayList<>();
+    private int[][] __delta = null, __outputs = null;
+    private Pattern __regex = null;
+    private int __state = 0, __lineLen = 0;
+    private long __lineNo = 0;
+    private byte[] __line = new byte[256];
+}
@@ -0,0 +1,304 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static gblibx.Util.isNonNull;
+import static java.util.Objects.isNull;
+
+/**
+ * Launch and track (many) background processes.
+ * Processes are started directly (no shell), so pid is known without parsing.
+ * Exits are observed via onExit() futures: no thread polls for exit.
+ * Output is redirected to files (or discarded), so no pumping is needed either.
+ * Cpu of live processes is sampled periodically (while any are live) on the shared
+ * {@link ProcessUsage#getSampler()}, since it cannot be read once a process is reaped;
+ * close() stops sampling.
+ */
+public class ProcessMonitor implements AutoCloseable {
+    public ProcessMonitor() {
+        this(Duration.ofMillis(SAMPLE_MSEC));
+    }
+
+    /**
+     * Create monitor.
+     *
+     * @param sample interval to sample cpu of live processes (zero to only sample on getCpu()).
+     */
+    public ProcessMonitor(Duration sample) {
+        __sampleMsec = sample.toMillis();
+    }
+
+    public static synchronized ProcessMonitor getDefault() {
+        if (isNull(__default)) __default = new ProcessMonitor();
+        return __default;
+    }
+
+    /**
+     * Launch background process.
+     *
+     * @param argv command and arguments.
+     * @param cout stdout file (null to discard).
+     * @param cerr stderr file (null to discard; same as cout to merge).
+     * @return handle.
+     * @throws IOException if process cannot be started.
+     */
+    public Handle launch(List<String> argv, File cout, File cerr) throws IOException {
+        final ProcessBuilder builder = new ProcessBuilder(argv)
+                .redirectInput(ProcessBuilder.Redirect.from(__DEV_NULL))
+                .redirectOutput(isNonNull(cout) ? ProcessBuilder.Redirect.to(cout) : ProcessBuilder.Redirect.DISCARD);
+        if (isNonNull(cerr) && cerr.equals(cout)) {
+            builder.redirectErrorStream(true);
+        } else {
+            builder.redirectError(isNonNull(cerr) ? ProcessBuilder.Redirect.to(cerr) : ProcessBuilder.Redirect.DISCARD);
+        }
+        return launch(builder);
+    }
+
+    public Handle launch(String... argv) throws IOException {
+        return launch(List.of(argv), null, null);
+    }
+
+    /**
+     * Launch background process.
+     * NOTE: if builder uses pipes, caller must consume/close streams.
+     *
+     * @param builder process to start.
+     * @return handle.
+     * @throws IOException if process cannot be started.
+     */
+    public Handle launch(ProcessBuilder builder) throws IOException {
+        final Process process = builder.start();
+        final Handle handle = new Handle(process.toHandle(), Util.join(builder.command()));
+        __track(handle, process.onExit().thenAccept(p -> handle.__exitValue = p.exitValue()));
+        return handle;
+    }
+
+    /**
+     * Track process not started here (e.g., by pid).
+     * Exit value is not available for such processes.
+     *
+     * @param process process to track.
+     * @return handle.
+     */
+    public Handle track(ProcessHandle process) {
+        final Handle handle = new Handle(process, process.info().commandLine().orElse(null));
+        __track(handle, process.onExit().thenAccept(p -> {}));
+        return handle;
+    }
+
+    public Optional<Handle> track(long pid) {
+        return ProcessHandle.of(pid).map(this::track);
+    }
+
+    /**
+     * Add listener called (on some pool thread) after each tracked process exits.
+     *
+     * @param listener exit listener.
+     * @return this object.
+     */
+    public ProcessMonitor addExitListener(Consumer<Handle> listener) {
+        __listeners.add(listener);
+        return this;
+    }
+
+    public Collection<Handle> getLive() {
+        return new ArrayList<>(__live.values());
+    }
+
+    public int getLiveCount() {
+        return __live.size();
+    }
+
+    public Optional<Handle> get(long pid) {
+        return Optional.ofNullable(__live.get(pid));
+    }
+
+    public long getLaunchedCount() {
+        return __launched.get();
+    }
+
+    public long getExitedCount() {
+        return __exited.get();
+    }
+
+    /**
+     * Stop (periodic) sampling of cpu.
+     * Tracked processes are not terminated, and exits are still observed.
+     */
+    @Override
+    public synchronized void close() {
+        __closed = true;
+        __stopSampler();
+    }
+
+    public static class Handle {
+        private Handle(ProcessHandle process, String cmd) {
+            this.process = process;
+            __cmd = cmd;
+        }
+
+        public long getPid() {
+            return process.pid();
+        }
+
+        public boolean isAlive() {
+            return isNull(__exitedAt);
+        }
+
+        /**
+         * @return exit value (empty if alive, or not started by monitor).
+         */
+        public Optional<Integer> getExitValue() {
+            return Optional.ofNullable(__exitValue);
+        }
+
+        /**
+         * Get total (user+system) cpu time.
+         * Sampled on each call (and periodically by monitor) while alive;
+         * after exit the last sample is returned.
+         *
+         * @return cpu time (empty if never sampled).
+         */
+        public Optional<Duration> getCpu() {
+            if (isAlive()) __sample();
+            return Optional.ofNullable(__cpu);
+        }
+
+        private void __sample() {
+            process.info().totalCpuDuration().ifPresent(cpu -> __cpu = cpu);
+        }
+
+        public Instant getStartedAt() {
+            return __startedAt;
+        }
+
+        public Optional<Instant> getExitedAt() {
+            return Optional.ofNullable(__exitedAt);
+        }
+
+        public Optional<String> getCommandLine() {
+            return Optional.ofNullable(__cmd);
+        }
+
+        public CompletableFuture<Handle> onExit() {
+            return __onExit;
+        }
+
+        /**
+         * Terminate process (and descendants): TERM then KILL after grace period.
+         */
+        public void destroy() {
+            RunCmd.destroyTree(process);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d: %s (%s)", getPid(), getCommandLine().orElse("?"),
+                    isAlive() ? "alive" : ("exit=" + getExitValue().map(String::valueOf).orElse("?")));
+        }
+
+        public final ProcessHandle process;
+        private final String __cmd;
+        private final Instant __startedAt = Instant.now();
+        private volatile Instant __exitedAt = null;
+        private volatile Integer __exitValue = null;
+        private volatile Duration __cpu = null;
+        private final CompletableFuture<Handle> __onExit = new CompletableFuture<>();
+    }
+
+    private void __track(Handle handle, CompletableFuture<Void> exited) {
+        __launched.incrementAndGet();
+        handle.__sample();  //initial sample
+        __live.put(handle.getPid(), handle);
+        __startSampler();
+        exited.whenComplete((v, ex) -> {
+            handle.__exitedAt = Instant.now();
+            __live.remove(handle.getPid());
+            synchronized (this) {
+                if (__live.isEmpty()) __stopSampler();
+            }
+            __exited.incrementAndGet();
+            for (Consumer<Handle> listener : __listeners) {
+                try {
+                    listener.accept(handle);
+                } catch (RuntimeException e) {
+                    Util.logException(e);
+                }
+            }
+            if (isNull(ex)) {
+                handle.__onExit.complete(handle);
+            } else {
+                handle.__onExit.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private synchronized void __startSampler() {
+        if ((0 >= __sampleMsec) || __closed || isNonNull(__sampler) || __live.isEmpty()) return;
+        __sampler = ProcessUsage.getSampler().scheduleAtFixedRate(() -> __live.values().forEach(Handle::__sample),
+                __sampleMsec, __sampleMsec, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void __stopSampler() {
+        if (isNull(__sampler)) return;
+        __sampler.cancel(false);
+        __sampler = null;
+    }
+
+    /**
+     * Default interval to sample cpu of live processes (0 to disable).
+     */
+    public static final long SAMPLE_MSEC =
+            Long.parseLong(System.getProperty("gblibx.ProcessMonitor.sampleMsec", "1000"));
+
+    private static final File __DEV_NULL = new File("/dev/null");
+    private static ProcessMonitor __default = null;
+
+    private final ConcurrentHashMap<Long, Handle> __live = new ConcurrentHashMap<>();
+    private final List<Consumer<Handle>> __listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong __launched = new AtomicLong(), __exited = new AtomicLong();
+    private final long __sampleMsec;
+    private ScheduledFuture<?> __sampler = null;
+    private boolean __closed = false;
+}
@@ -0,0 +1,295 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resource usage of a process: wall time, user/system cpu, peak rss, and output bytes.
+ * Cpu and rss are sampled (best effort) from /proc/pid/{stat,status} (else ProcessHandle.Info,
+ * which only has total cpu) while process runs: periodically (see {@link RunCmd#SAMPLE_MSEC}),
+ * and more often from stdout EOF until exit.
+ * An exited (reaped) process cannot be read, so cpu used after the last sample is not counted.
+ * Usage is also aggregated (by command name) for capacity planning:
+ * see {@link #getStatistics()}.
+ */
+public class ProcessUsage {
+    public synchronized Duration getWall() {
+        return __wall;
+    }
+
+    public synchronized Duration getUser() {
+        return __user;
+    }
+
+    public synchronized Duration getSystem() {
+        return __system;
+    }
+
+    public synchronized Duration getCpu() {
+        return __user.plus(__system);
+    }
+
+    /**
+     * @return peak resident set size (bytes).
+     */
+    public synchronized long getPeakRss() {
+        return __peakRss;
+    }
+
+    public synchronized long getStdoutBytes() {
+        return __stdoutBytes;
+    }
+
+    public synchronized long getStderrBytes() {
+        return __stderrBytes;
+    }
+
+    synchronized void setWall(Duration wall) {
+        __wall = wall;
+    }
+
+    synchronized void setStdoutBytes(long n) {
+        __stdoutBytes = n;
+    }
+
+    synchronized void setStderrBytes(long n) {
+        __stderrBytes = n;
+    }
+
+    /**
+     * Sample cpu and rss of (live) process.
+     * Values only increase (so a failed sample does not lose data).
+     *
+     * @param pid process id.
+     * @return false if process could not be read (exited).
+     */
+    public synchronized boolean sample(long pid) {
+        final Path proc = Paths.get("/proc", Long.toString(pid));
+        if (__HAS_PROC) {
+            try {
+                //pid (comm) state ... : comm can have spaces, so skip past last ')'
+                final String stat = Files.readString(proc.resolve("stat"), StandardCharsets.US_ASCII);
+                final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                //fields[0] is state (field 3): utime, stime, cutime, cstime are fields 14..17.
+                final long utime = Long.parseLong(fields[11]) + Long.parseLong(fields[13]);
+                final long stime = Long.parseLong(fields[12]) + Long.parseLong(fields[14]);
+                __user = __max(__user, __ticks(utime));
+                __system = __max(__system, __ticks(stime));
+                for (String line : Files.readAllLines(proc.resolve("status"), StandardCharsets.US_ASCII)) {
+                    if (line.startsWith("VmHWM:")) {
+                        final long kb = Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                        __peakRss = Math.max(__peakRss, 1024 * kb);
+                        break;
+                    }
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                return false;//exited (or not linux format): keep last sample
+            }
+        }
+        final Duration cpu = ProcessHandle.of(pid)
+                .filter(ProcessHandle::isAlive)
+                .flatMap(p -> p.info().totalCpuDuration())
+                .orElse(null);
+        if (null == cpu) return false;
+        __user = __max(__user, cpu);
+        return true;
+    }
+
+    /**
+     * Sample process until it exits, at increasing intervals (from 1 msec, up to maxMsec).
+     * Use once exit is imminent (e.g., stdout EOF), so the last sample is close to exit.
+     *
+     * @param pid     process id.
+     * @param maxMsec max interval between samples.
+     * @return future completed once process cannot be read (exited).
+     */
+    public CompletableFuture<Void> sampleUntilExit(long pid, long maxMsec) {
+        final CompletableFuture<Void> exited = new CompletableFuture<>();
+        __sampleUntilExit(pid, 1, maxMsec, exited);
+        return exited;
+    }
+
+    private void __sampleUntilExit(long pid, long msec, long maxMsec, CompletableFuture<Void> exited) {
+        if (!sample(pid)) {
+            exited.complete(null);
+            return;
+        }
+        getSampler().schedule(() -> __sampleUntilExit(pid, Math.min(2 * msec, maxMsec), maxMsec, exited),
+                msec, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get (shared) scheduler used to sample usage.
+     * Separate from {@link RunCmd#getWatchdog()}, so (slow) /proc reads do not delay timeouts.
+     *
+     * @return single threaded scheduler.
+     */
+    public static synchronized ScheduledExecutorService getSampler() {
+        if (null == __sampler) {
+            final ScheduledThreadPoolExecutor sampler =
+                    new ScheduledThreadPoolExecutor(1, Util.newDaemonThreadFactory("gblibx-usage-sampler"));
+            sampler.setRemoveOnCancelPolicy(true);
+            __sampler = sampler;
+        }
+        return __sampler;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("wall=%.3fs user=%.3fs sys=%.3fs rss=%dK stdout=%d stderr=%d",
+                __wall.toMillis() / 1e3, __user.toMillis() / 1e3, __system.toMillis() / 1e3,
+                __peakRss / 1024, __stdoutBytes, __stderrBytes);
+    }
+
+    /**
+     * Aggregated usage (of same command).
+     */
+    public static class Aggregate {
+        public long count = 0;
+        public Duration wall = Duration.ZERO, user = Duration.ZERO, system = Duration.ZERO;
+        public long maxPeakRss = 0, stdoutBytes = 0, stderrBytes = 0;
+
+        public synchronized Aggregate add(ProcessUsage usage) {
+            count++;
+            wall = wall.plus(usage.getWall());
+            user = user.plus(usage.getUser());
+            system = system.plus(usage.getSystem());
+            maxPeakRss = Math.max(maxPeakRss, usage.getPeakRss());
+            stdoutBytes += usage.getStdoutBytes();
+            stderrBytes += usage.getStderrBytes();
+            return this;
+        }
+
+        public synchronized Aggregate copy() {
+            final Aggregate copy = new Aggregate();
+            copy.count = count;
+            copy.wall = wall;
+            copy.user = user;
+            copy.system = system;
+            copy.maxPeakRss = maxPeakRss;
+            copy.stdoutBytes = stdoutBytes;
+            copy.stderrBytes = stderrBytes;
+            return copy;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("count=%d wall=%.3fs user=%.3fs sys=%.3fs maxRss=%dK stdout=%d stderr=%d",
+                    count, wall.toMillis() / 1e3, user.toMillis() / 1e3, system.toMillis() / 1e3,
+                    maxPeakRss / 1024, stdoutBytes, stderrBytes);
+        }
+    }
+
+    /**
+     * Add usage to (global) statistics.
+     *
+     * @param name  command name (e.g., argv[0]).
+     * @param usage usage of completed command.
+     */
+    public static void record(String name, ProcessUsage usage) {
+        __STATISTICS.computeIfAbsent(new File(name).getName(), k -> new Aggregate()).add(usage);
+    }
+
+    /**
+     * Get (snapshot of) statistics by command name.
+     *
+     * @return command name to aggregated usage.
+     */
+    public static Map<String, Aggregate> getStatistics() {
+        final Map<String, Aggregate> stats = new TreeMap<>();
+        __STATISTICS.forEach((k, v) -> stats.put(k, v.copy()));
+        return stats;
+    }
+
+    public static void resetStatistics() {
+        __STATISTICS.clear();
+    }
+
+    /**
+     * Count bytes read (from process stream).
+     */
+    static class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream ins) {
+            super(ins);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            if (0 <= c) count++;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (0 < n) count += n;
+            return n;
+        }
+
+        volatile long count = 0;
+    }
+
+    private static Duration __ticks(long ticks) {
+        return Duration.ofMillis((1000 * ticks) / CLOCK_TICKS);
+    }
+
+    private static Duration __max(Duration a, Duration b) {
+        return (0 <= a.compareTo(b)) ? a : b;
+    }
+
+    /**
+     * Clock ticks per second (as in /proc/pid/stat).
+     */
+    public static final long CLOCK_TICKS =
+            Long.parseLong(System.getProperty("gblibx.ProcessUsage.clockTicks", "100"));
+
+    private static final boolean __HAS_PROC = new File("/proc/self/stat").canRead();
+    private static final ConcurrentHashMap<String, Aggregate> __STATISTICS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService __sampler = null;
+
+    private Duration __wall = Duration.ZERO, __user = Duration.ZERO, __system = Duration.ZERO;
+    private long __peakRss = 0, __stdoutBytes = 0, __stderrBytes = 0;
+}
@@ -0,0 +1,162 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static java.util.Objects.isNull;
+
+/**
+ * Retry (async) operations with exponential backoff and (full) jitter, without holding threads:
+ * retries are scheduled on a shared timer.
+ * Retries are bounded per key (e.g. host) by a budget (token bucket), so an outage
+ * cannot turn into a retry storm: when budget is spent, failure is returned immediately.
+ */
+public class RetryScheduler {
+    /**
+     * Create scheduler.
+     *
+     * @param base         first (maximum) backoff.
+     * @param max          maximum backoff.
+     * @param total        give up when next retry would start after total (since first attempt).
+     * @param budget       retry budget (tokens) per key.
+     * @param budgetPerSec budget refill rate.
+     */
+    public RetryScheduler(Duration base, Duration max, Duration total, double budget, double budgetPerSec) {
+        invariant(!base.isNegative() && (0 <= max.compareTo(base)) && (0 < budget));
+        __base = base.toMillis();
+        __max = max.toMillis();
+        __total = total.toMillis();
+        __budget = budget;
+        __budgetPerSec = budgetPerSec;
+    }
+
+    /**
+     * Run operation, with retries.
+     *
+     * @param key       budget key.
+     * @param attempt   start (next) attempt.
+     * @param retryable test (unwrapped) failure is retryable.
+     * @param <T>       result type.
+     * @return future result (or last failure).
+     */
+    public <T> CompletableFuture<T> submit(String key, Supplier<CompletableFuture<T>> attempt,
+                                           Predicate<Throwable> retryable) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        __attempt(key, attempt, retryable, result, 0, System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Compute backoff (full jitter): uniform in [0, min(max, base * 2^n)].
+     *
+     * @param n retry number (from 0).
+     * @return backoff (msec).
+     */
+    public long getBackoff(int n) {
+        final long ceiling = Math.min(__max, __base << Math.min(n, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public long getRetries() {
+        return __retries.get();
+    }
+
+    /**
+     * @return number of failures returned (without retry) because budget was spent.
+     */
+    public long getExhausted() {
+        return __exhausted.get();
+    }
+
+    private <T> void __attempt(String key, Supplier<CompletableFuture<T>> attempt, Predicate<Throwable> retryable,
+                               CompletableFuture<T> result, int n, long startedAt) {
+        final CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+            return;
+        }
+        future.whenComplete((value, ex) -> {
+            if (isNull(ex)) {
+                result.complete(value);
+                return;
+            }
+            final Throwable cause = ((ex instanceof CompletionException) && isNonNull(ex.getCause())) ? ex.getCause() : ex;
+            final long backoff = getBackoff(n);
+            if (!retryable.test(cause)
+                    || (System.currentTimeMillis() + backoff - startedAt > __total)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!__buckets.computeIfAbsent(key, k -> new Bucket(__budget)).take()) {
+                __exhausted.incrementAndGet();
+                result.completeExceptionally(cause);
+                return;
+            }
+            __retries.incrementAndGet();
+            CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS)
+                    .execute(() -> __attempt(key, attempt, retryable, result, n + 1, startedAt));
+        });
+    }
+
+    private class Bucket {
+        private Bucket(double tokens) {
+            __tokens = tokens;
+        }
+
+        private synchronized boolean take() {
+            final long now = System.nanoTime();
+            __tokens = Math.min(__budget, __tokens + (now - __last) * 1e-9 * __budgetPerSec);
+            __last = now;
+            if (1 > __tokens) return false;
+            __tokens -= 1;
+            return true;
+        }
+
+        private double __tokens;
+        private long __last = System.nanoTime();
+    }
+
+    private final long __base, __max, __total;
+    private final double __budget, __budgetPerSec;
+    private final Map<String, Bucket> __buckets = new ConcurrentHashMap<>();
+    private final AtomicLong __retries = new AtomicLong(0), __exhausted = new AtomicLong(0);
+}
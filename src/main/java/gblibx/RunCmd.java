@@ -28,15 +28,24 @@
 
 package gblibx;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
-import static gblibx.Util.expectNull;
+import static gblibx.Util.*;
+import static java.util.Objects.isNull;
 
 public class RunCmd implements Runnable {
     public static int runCommand(String command) {
@@ -57,6 +66,21 @@ public class RunCmd implements Runnable {
         return stdout.toString();
     }
 
+    /**
+     * Run command and capture only first and last bytes of stdout (constant memory).
+     *
+     * @param command  command to run.
+     * @param headSize max bytes from start.
+     * @param tailSize max bytes from end.
+     * @return head (part1) and tail (part2: null if not truncated).
+     */
+    public static Util.ReadFileData runCommandStdout(String command, int headSize, int tailSize) {
+        final HeadTailCapture stdout = new HeadTailCapture(headSize, tailSize);
+        RunCmd e = new RunCmd(command).setCoutBytes(stdout);
+        e.run();
+        return stdout.toReadFileData();
+    }
+
     public static String[] splitCmd(String cmd) {
         return cmd.split("\\s+");
     }
@@ -104,8 +128,175 @@ public class RunCmd implements Runnable {
         return this;
     }
 
+    /**
+     * Consume stdout as raw (chunked) bytes, instead of lines.
+     *
+     * @param cout consumer of chunks (see {@link ByteGobbler}).
+     * @return this object.
+     */
+    public RunCmd setCoutBytes(Consumer<ByteBuffer> cout) {
+        expectNull(__coutBytes);
+        __coutBytes = cout;
+        return this;
+    }
+
+    /**
+     * Consume stderr as raw (chunked) bytes, instead of lines.
+     *
+     * @param cerr consumer of chunks (see {@link ByteGobbler}).
+     * @return this object.
+     */
+    public RunCmd setCerrBytes(Consumer<ByteBuffer> cerr) {
+        expectNull(__cerrBytes);
+        __cerrBytes = cerr;
+        return this;
+    }
+
+    /**
+     * Redirect stdout directly to file (no copy through jvm).
+     *
+     * @param file   output file.
+     * @param append true to append to file.
+     * @return this object.
+     */
+    public RunCmd redirectCout(File file, boolean append) {
+        _builder.redirectOutput(append ? ProcessBuilder.Redirect.appendTo(file) : ProcessBuilder.Redirect.to(file));
+        return this;
+    }
+
+    /**
+     * Redirect stderr directly to file (no copy through jvm).
+     *
+     * @param file   output file.
+     * @param append true to append to file.
+     * @return this object.
+     */
+    public RunCmd redirectCerr(File file, boolean append) {
+        _builder.redirectError(append ? ProcessBuilder.Redirect.appendTo(file) : ProcessBuilder.Redirect.to(file));
+        return this;
+    }
+
+    /**
+     * Feed stdin from stream (which is closed at end).
+     *
+     * @param cin input.
+     * @return this object.
+     */
+    public RunCmd setStdin(InputStream cin) {
+        return setStdin(Channels.newChannel(cin));
+    }
+
+    /**
+     * Feed stdin from channel (which is closed at end, or once process exits).
+     *
+     * @param cin input.
+     * @return this object.
+     */
+    public RunCmd setStdin(ReadableByteChannel cin) {
+        final ByteBuffer buf = ByteBuffer.allocate(ByteGobbler.CHUNK_SIZE);
+        return setStdin(() -> {
+            try {
+                buf.clear();
+                final int n = cin.read(buf);
+                if (0 > n) {
+                    cin.close();
+                    return null;
+                }
+                return buf.flip();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, cin);
+    }
+
+    /**
+     * Feed stdin from (pull-based) producer.
+     * Next buffer is only pulled after previous is written to the process,
+     * so producer is throttled to the rate the process consumes (backpressure).
+     * The stdin pump runs on the (shared) executor.
+     *
+     * @param cin producer: returns null at end of input.
+     * @return this object.
+     */
+    public RunCmd setStdin(Supplier<ByteBuffer> cin) {
+        return setStdin(cin, (cin instanceof AutoCloseable) ? (AutoCloseable) cin : null);
+    }
+
+    /**
+     * Feed stdin from (pull-based) producer (see {@link #setStdin(Supplier)}).
+     *
+     * @param cin    producer: returns null at end of input.
+     * @param source closed at end of input, or once process exits
+     *               (so unconsumed input is not leaked, and a blocked producer is woken).
+     * @return this object.
+     */
+    public RunCmd setStdin(Supplier<ByteBuffer> cin, AutoCloseable source) {
+        __cin = cin;
+        __cinSource = source;
+        return this;
+    }
+
+    /**
+     * Redirect stdin directly from file (no copy through jvm).
+     *
+     * @param file input file.
+     * @return this object.
+     */
+    public RunCmd redirectStdin(File file) {
+        _builder.redirectInput(ProcessBuilder.Redirect.from(file));
+        return this;
+    }
+
+    /**
+     * Merge stderr into stdout.
+     *
+     * @return this object.
+     */
+    public RunCmd mergeCerr() {
+        _builder.redirectErrorStream(true);
+        return this;
+    }
+
     public static enum ExitType {
-        eUnknown, eNormal, eException
+        eUnknown, eNormal, eException, eTimeout
+    }
+
+    /**
+     * Set wall-clock timeout: process (tree) is terminated when exceeded.
+     * With a timeout (or idle timeout), the command runs in its own process group
+     * (via SETSID, if available), so descendants are terminated even if orphaned.
+     *
+     * @param timeout timeout (null for none).
+     * @return this object.
+     */
+    public RunCmd setTimeout(Duration timeout) {
+        __timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Set idle timeout: process (tree) is terminated if no output for this long.
+     * Output can only be observed on (piped) stdout/stderr: if either is redirected
+     * (see {@link #redirectCout(File, boolean)}, {@link #redirectCerr(File, boolean)}),
+     * the idle timeout is ignored (use {@link #setTimeout(Duration)} instead).
+     *
+     * @param timeout timeout (null for none).
+     * @return this object.
+     */
+    public RunCmd setIdleTimeout(Duration timeout) {
+        __idleTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Set interval to sample cpu and rss (see {@link #getUsage()}).
+     *
+     * @param interval interval (null or zero to disable).
+     * @return this object.
+     */
+    public RunCmd setSampleInterval(Duration interval) {
+        __sampleMsec = isNull(interval) ? 0 : interval.toMillis();
+        return this;
     }
 
     public String getCmd() {
@@ -117,27 +308,335 @@ public class RunCmd implements Runnable {
     private ExitType __exitType = ExitType.eUnknown;
     private Exception __exception = null;
     private Consumer<String> __cout, __cerr;
+    private Consumer<ByteBuffer> __coutBytes = null, __cerrBytes = null;
+    private Supplier<ByteBuffer> __cin = null;
+    private AutoCloseable __cinSource = null;
+    private Executor __executor = null;
+    private Duration __timeout = null, __idleTimeout = null;
+    private volatile long __lastOutputAt = 0;
+    private volatile boolean __timedOut = false;
+    private ScheduledFuture<?> __wallTimer = null, __idleTimer = null, __sampler = null;
+    private boolean __watching = false, __processGroup = false;
+    private volatile ProcessUsage __usage = null;
+    private long __sampleMsec = SAMPLE_MSEC;
     protected final ProcessBuilder _builder;
     protected Process _process = null;
 
+    /**
+     * Set executor used to pump process streams (for this instance).
+     * A bounded executor must have at least 3 threads per concurrently running command,
+     * since stdout and stderr are pumped (and stdin fed, see setStdin) concurrently.
+     *
+     * @param executor executor to use.
+     * @return this object.
+     */
+    public RunCmd setExecutor(Executor executor) {
+        __executor = executor;
+        return this;
+    }
+
+    /**
+     * Set executor used to pump process streams (for all instances without setExecutor).
+     *
+     * @param executor executor to use.
+     * @return previous executor.
+     */
+    public static synchronized Executor setDefaultExecutor(Executor executor) {
+        final Executor was = __defaultExecutor;
+        __defaultExecutor = executor;
+        return was;
+    }
+
+    public static synchronized Executor getDefaultExecutor() {
+        if (isNull(__defaultExecutor)) {
+            __defaultExecutor = __createDefaultExecutor(EXECUTOR);
+        }
+        return __defaultExecutor;
+    }
+
+    /**
+     * Start command and return without waiting.
+     * Process streams are pumped on (shared) executor.
+     *
+     * @return future which completes with exit value (after all output consumed).
+     */
+    public CompletableFuture<Integer> start() {
+        final List<String> command = _builder.command();
+        __processGroup = isNonNull(SETSID) && (isNonNull(__timeout) || isNonNull(__idleTimeout));
+        try {
+            if (__processGroup) {
+                //setsid execs command (same pid) as leader of new process group
+                final List<String> setsid = new ArrayList<>(command);
+                setsid.add(0, SETSID);
+                _builder.command(setsid);
+            }
+            _process = _builder.start();
+        } catch (IOException e) {
+            __setException(e);
+            return CompletableFuture.completedFuture(__exitValue);
+        } finally {
+            _builder.command(command);
+        }
+        final Executor executor = (isNonNull(__executor)) ? __executor : getDefaultExecutor();
+        final long startedAt = System.nanoTime();
+        final long pid = _process.pid();
+        final long sampleMsec = __sampleMsec;
+        __lastOutputAt = startedAt;
+        __usage = new ProcessUsage();
+        __startWatchdog();
+        final ProcessUsage.CountingInputStream cout = new ProcessUsage.CountingInputStream(_process.getInputStream());
+        final ProcessUsage.CountingInputStream cerr = new ProcessUsage.CountingInputStream(_process.getErrorStream());
+        final boolean pipeCerr = !_builder.redirectErrorStream()
+                && (ProcessBuilder.Redirect.Type.PIPE == _builder.redirectError().type());
+        return CompletableFuture.allOf(
+                //stdout EOF is usually just before exit: sample (more often) until exit.
+                __pump(cout, _builder.redirectOutput(), __cout, __coutBytes, executor)
+                        .thenCompose(v -> sampleUntilExit(__usage, _process, sampleMsec)),
+                __pump(cerr, pipeCerr ? ProcessBuilder.Redirect.PIPE : ProcessBuilder.Redirect.DISCARD,
+                        __cerr, __cerrBytes, executor),
+                __feed(executor),
+                _process.onExit()
+        ).handle((v, ex) -> {
+            __stopWatchdog();
+            __usage.setWall(Duration.ofNanos(System.nanoTime() - startedAt));
+            __usage.setStdoutBytes(cout.count);
+            __usage.setStderrBytes(cerr.count);
+            ProcessUsage.record(__cmd[0], __usage);
+            if (isNull(ex)) {
+                __exitValue = _process.exitValue();
+                __exitType = (__timedOut) ? ExitType.eTimeout : ExitType.eNormal;
+            } else {
+                __setException(ex);
+            }
+            return __exitValue;
+        });
+    }
+
+    private CompletableFuture<Void> __pump(InputStream ins, ProcessBuilder.Redirect redirect,
+                                           Consumer<String> lines, Consumer<ByteBuffer> bytes,
+                                           Executor executor) {
+        if (ProcessBuilder.Redirect.Type.PIPE != redirect.type()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Runnable gobbler = (isNonNull(bytes))
+                ? new ByteGobbler(ins, __touch(bytes))
+                : new StreamGobbler(ins, __touch(lines));
+        return CompletableFuture.runAsync(gobbler, executor);
+    }
+
+    private CompletableFuture<Void> __feed(Executor executor) {
+        if (isNull(__cin)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Supplier<ByteBuffer> cin = __cin;
+        final AutoCloseable source = __cinSource;
+        final OutputStream os = _process.getOutputStream();
+        final CompletableFuture<Void> fed = CompletableFuture.runAsync(() -> {
+            try (WritableByteChannel channel = Channels.newChannel(os)) {
+                ByteBuffer buf;
+                while (isNonNull(buf = cin.get())) {
+                    while (buf.hasRemaining()) channel.write(buf);  //blocks while pipe is full
+                }
+            } catch (IOException | UncheckedIOException e) {
+                ;//process exited (closed stdin) before all input consumed: not an error
+            } finally {
+                __close(source);
+            }
+        }, executor);
+        _process.onExit().thenRun(() -> {
+            if (!fed.isDone()) __close(source);
+        });
+        return fed;
+    }
+
+    private static void __close(AutoCloseable source) {
+        if (isNull(source)) return;
+        try {
+            source.close();
+        } catch (Exception e) {
+            ;//ignore
+        }
+    }
+
+    private <T> Consumer<T> __touch(Consumer<T> os) {
+        if (isNull(__idleTimeout)) return os;
+        return (s) -> {
+            __lastOutputAt = System.nanoTime();
+            os.accept(s);
+        };
+    }
+
+    /**
+     * Get resource usage (of last start/run).
+     *
+     * @return usage (null if never started).
+     */
+    public ProcessUsage getUsage() {
+        return __usage;
+    }
+
+    private synchronized void __startWatchdog() {
+        if (0 < __sampleMsec) {
+            final long pid = _process.pid();
+            __sampler = ProcessUsage.getSampler()
+                    .scheduleAtFixedRate(() -> __usage.sample(pid), 0, __sampleMsec, TimeUnit.MILLISECONDS);
+        }
+        if (isNonNull(__timeout)) {
+            __wallTimer = getWatchdog().schedule(this::__onTimeout, __timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (isNonNull(__idleTimeout) && __isOutputPiped()) {
+            __idleTimer = getWatchdog().schedule(this::__checkIdle, __idleTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        __watching = true;
+    }
+
+    /**
+     * Sample usage until process exits (see {@link ProcessUsage#sampleUntilExit(long, long)}).
+     *
+     * @param usage      usage to update.
+     * @param process    process.
+     * @param sampleMsec periodic sample interval (0 if none: then not sampled).
+     * @return future completed on exit (not delayed by the sample interval).
+     */
+    static CompletableFuture<?> sampleUntilExit(ProcessUsage usage, Process process, long sampleMsec) {
+        if (0 >= sampleMsec) return CompletableFuture.completedFuture(null);
+        return usage.sampleUntilExit(process.pid(), sampleMsec)
+                .applyToEither(process.onExit().thenApply(p -> (Void) null), v -> v);
+    }
+
+    private boolean __isOutputPiped() {
+        final ProcessBuilder.Redirect.Type pipe = ProcessBuilder.Redirect.Type.PIPE;
+        return (pipe == _builder.redirectOutput().type())
+                && (_builder.redirectErrorStream() || (pipe == _builder.redirectError().type()));
+    }
+
+    private synchronized void __stopWatchdog() {
+        for (ScheduledFuture<?> timer : Arrays.asList(__wallTimer, __idleTimer, __sampler)) {
+            if (isNonNull(timer)) timer.cancel(false);
+        }
+        __wallTimer = __idleTimer = __sampler = null;
+        __watching = false;
+    }
+
+    private synchronized void __checkIdle() {
+        if (isNull(__idleTimer)) return;    //already stopped
+        final long idle = System.nanoTime() - __lastOutputAt;
+        final long remain = __idleTimeout.toNanos() - idle;
+        if (0 >= remain) {
+            __onTimeout();
+        } else {
+            __idleTimer = getWatchdog().schedule(this::__checkIdle, remain, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Terminate tree and process group: root may have already exited while (orphaned)
+     * descendants still hold its output open (so command is not yet complete).
+     * Synchronized with __stopWatchdog: no-op once command completed.
+     */
+    private synchronized void __onTimeout() {
+        if (!__watching) return;
+        __timedOut = true;
+        destroy();
+        //not complete: group still has members, so pgid is not reused
+        if (__processGroup) destroyGroup(_process.pid());
+    }
+
+    /**
+     * Get (shared) watchdog used to enforce timeouts.
+     *
+     * @return single threaded scheduler.
+     */
+    public static synchronized ScheduledExecutorService getWatchdog() {
+        if (isNull(__watchdog)) {
+            final ScheduledThreadPoolExecutor watchdog =
+                    new ScheduledThreadPoolExecutor(1, newDaemonThreadFactory("gblibx-runcmd-watchdog"));
+            watchdog.setRemoveOnCancelPolicy(true);
+            __watchdog = watchdog;
+        }
+        return __watchdog;
+    }
+
     @Override
     public void run() {
         try {
-            _process = _builder.start();
-            List<Thread> threads = Arrays.asList(
-                    new Thread(new StreamGobbler(_process.getInputStream(), __cout)),
-                    new Thread(new StreamGobbler(_process.getErrorStream(), __cerr))
-            );
-            threads.forEach(Thread::start);
-            _process.waitFor();
-            for (Thread thread : threads) thread.join();
-            __exitValue = _process.exitValue();
-            __exitType = ExitType.eNormal;
-        } catch (IOException | InterruptedException e) {
+            start().get();
+        } catch (InterruptedException | ExecutionException e) {
             __setException(e);
         }
     }
 
+    /**
+     * Terminate (running) process tree (see {@link #destroyTree(ProcessHandle)}).
+     */
+    public void destroy() {
+        if (isNull(_process)) return;
+        destroyTree(_process.toHandle());
+    }
+
+    /**
+     * Terminate process and all its descendants.
+     * Processes are sent TERM, and then KILL (if still alive) after KILL_GRACE_MSEC.
+     *
+     * @param process root of process tree.
+     */
+    public static void destroyTree(ProcessHandle process) {
+        //collect tree before any termination, else descendants are re-parented.
+        final List<ProcessHandle> tree = process.descendants().collect(Collectors.toList());
+        tree.add(0, process);
+        tree.forEach(ProcessHandle::destroy);
+        getWatchdog().schedule(() -> {
+            tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+        }, KILL_GRACE_MSEC, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Terminate process group (see setsid(1)).
+     * Group is sent TERM, and then KILL after KILL_GRACE_MSEC.
+     *
+     * @param pgid process group id (pid of group leader).
+     */
+    public static void destroyGroup(long pgid) {
+        __kill("-TERM", pgid);
+        getWatchdog().schedule(() -> __kill("-KILL", pgid), KILL_GRACE_MSEC, TimeUnit.MILLISECONDS);
+    }
+
+    private static void __kill(String signal, long pgid) {
+        try {
+            new ProcessBuilder("kill", signal, "--", "-" + pgid)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            ;//best effort (tree was destroyed too)
+        }
+    }
+
+    private static String __findSetsid(String path) {
+        return (!path.isEmpty() && new File(path).canExecute()) ? path : null;
+    }
+
+    /**
+     * Default interval to sample (cpu, rss) usage of running command (0 disables sampling:
+     * then cpu and rss are reported as 0). See {@link #setSampleInterval(Duration)}.
+     * All commands are sampled on one (shared) thread: see {@link ProcessUsage#getSampler()}.
+     */
+    public static final long SAMPLE_MSEC =
+            Long.parseLong(System.getProperty("gblibx.RunCmd.sampleMsec", "1000"));
+
+    /**
+     * setsid(1) used to run commands with a timeout in their own process group
+     * (null if not found, or property is empty: then only the live tree is terminated).
+     */
+    public static final String SETSID =
+            __findSetsid(System.getProperty("gblibx.RunCmd.setsid", "/usr/bin/setsid"));
+
+    /**
+     * Time between TERM and KILL (see destroy()).
+     */
+    public static final long KILL_GRACE_MSEC =
+            Long.parseLong(System.getProperty("gblibx.RunCmd.killGraceMsec", "5000"));
+
     public int getExitValue() {
         return __exitValue;
     }
@@ -154,11 +653,43 @@ public class RunCmd implements Runnable {
         return __exception;
     }
 
-    private void __setException(Exception ex) {
-        __exception = ex;
+    private void __setException(Throwable ex) {
+        if ((ex instanceof CompletionException) && isNonNull(ex.getCause())) {
+            ex = ex.getCause();
+        }
+        __exception = (ex instanceof Exception) ? (Exception) ex : new RuntimeException(ex);
         __exitType = ExitType.eException;
     }
 
+    /**
+     * Create default executor.
+     *
+     * @param spec "virtual" (if available, else "cached"), "cached" or number of threads.
+     * @return executor.
+     */
+    private static Executor __createDefaultExecutor(String spec) {
+        if (spec.equals("virtual")) {
+            try {
+                //jdk21+
+                return castobj(Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+            } catch (ReflectiveOperationException e) {
+                spec = "cached";
+            }
+        }
+        final ThreadFactory factory = newDaemonThreadFactory("gblibx-runcmd-io");
+        return (spec.equals("cached"))
+                ? Executors.newCachedThreadPool(factory)
+                : Executors.newFixedThreadPool(Integer.parseInt(spec), factory);
+    }
+
+    /**
+     * Default executor to pump process streams: "virtual", "cached" or number of threads.
+     */
+    public static final String EXECUTOR = System.getProperty("gblibx.RunCmd.executor", "virtual");
+
+    private static Executor __defaultExecutor = null;
+    private static ScheduledExecutorService __watchdog = null;
+
     public static class StreamGobbler implements Runnable {
         public StreamGobbler(InputStream from, Consumer<String> to) {
             _reader = new BufferedReader(new InputStreamReader(from));
@@ -174,4 +705,90 @@ public class RunCmd implements Runnable {
         }
     }
 
+    /**
+     * Pump raw bytes in chunks (no decoding, no per line objects).
+     * The same buffer is reused for every chunk: it is only valid during accept()
+     * (position is 0 and limit is number of bytes read).
+     * If consumer is AutoCloseable, it is closed at end of stream.
+     */
+    public static class ByteGobbler implements Runnable {
+        public ByteGobbler(InputStream from, Consumer<ByteBuffer> to) {
+            this(from, to, CHUNK_SIZE);
+        }
+
+        public ByteGobbler(InputStream from, Consumer<ByteBuffer> to, int chunkSize) {
+            _ins = from;
+            _writer = to;
+            _buf = ByteBuffer.allocate(chunkSize);
+        }
+
+        protected final InputStream _ins;
+        protected final Consumer<ByteBuffer> _writer;
+        protected final ByteBuffer _buf;
+
+        @Override
+        public void run() {
+            try (InputStream ins = _ins) {
+                int n;
+                while (0 <= (n = ins.read(_buf.array(), 0, _buf.capacity()))) {
+                    if (0 == n) continue;
+                    _buf.clear().limit(n);
+                    _writer.accept(_buf);
+                }
+                if (_writer instanceof AutoCloseable) {
+                    ((AutoCloseable) _writer).close();
+                }
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        public static final int CHUNK_SIZE =
+                Integer.parseInt(System.getProperty("gblibx.RunCmd.chunkSize", "65536"));
+    }
+
+    /**
+     * Write chunks to file, and pass them on to (optional) next consumer.
+     */
+    public static class Tee implements Consumer<ByteBuffer>, Closeable {
+        public Tee(File file, boolean append, Consumer<ByteBuffer> next) throws IOException {
+            __channel = FileChannel.open(toPath(file),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            __next = next;
+        }
+
+        @Override
+        public void accept(ByteBuffer buf) {
+            final int pos = buf.position();
+            try {
+                while (buf.hasRemaining()) __channel.write(buf);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (isNonNull(__next)) {
+                __next.accept(buf.position(pos));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            __channel.close();
+            if (__next instanceof Closeable) {
+                ((Closeable) __next).close();
+            } else if (__next instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) __next).close();
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        private final FileChannel __channel;
+        private final Consumer<ByteBuffer> __next;
+    }
+
 }
@@ -0,0 +1,291 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Consumer;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+
+/**
+ * Run (many) commands with bounded parallelism.
+ * Commands are started (via {@link RunCmd#start()}) in priority order
+ * (higher first; equal priority in order added), and no thread is held per command.
+ * Results are passed to (optional) consumer as each command completes.
+ */
+public class RunCmdBatch {
+    public enum Mode {
+        eKeepGoing,
+        eFailFast   //stop starting commands (and terminate running) after first failure
+    }
+
+    public RunCmdBatch(int parallelism) {
+        this(parallelism, Mode.eKeepGoing);
+    }
+
+    public RunCmdBatch(int parallelism, Mode mode) {
+        invariant(0 < parallelism, "parallelism must be > 0");
+        __parallelism = parallelism;
+        __mode = mode;
+    }
+
+    /**
+     * Set consumer of results (called as each command completes).
+     * NOTE: called from (shared) executor threads: should not block.
+     *
+     * @param onResult result consumer.
+     * @return this object.
+     */
+    public RunCmdBatch setOnResult(Consumer<Result> onResult) {
+        __onResult = onResult;
+        return this;
+    }
+
+    public RunCmdBatch add(RunCmd cmd) {
+        return add(cmd, 0);
+    }
+
+    /**
+     * Add command.
+     * Commands can be added after start(), until all (added) commands complete.
+     *
+     * @param cmd      command.
+     * @param priority higher runs sooner.
+     * @return this object.
+     */
+    public RunCmdBatch add(RunCmd cmd, int priority) {
+        final boolean started;
+        synchronized (this) {
+            invariant(!__done.isDone(), "batch already complete");
+            __total++;
+            __queue.add(new Result(cmd, priority, __seqno++));
+            started = __started;
+        }
+        if (started) __dispatch();
+        return this;
+    }
+
+    /**
+     * Start running commands.
+     *
+     * @return future completed after all commands complete.
+     */
+    public CompletableFuture<Summary> start() {
+        synchronized (this) {
+            invariant(!__started, "batch already started");
+            __started = true;
+            __startedAt = System.nanoTime();
+            if (0 == __total) __done.complete(getSummary());
+        }
+        __dispatch();
+        return __done;
+    }
+
+    /**
+     * Start and wait for all commands to complete.
+     *
+     * @return summary.
+     */
+    public Summary run() {
+        return start().join();
+    }
+
+    public static class Result {
+        private Result(RunCmd cmd, int priority, long seqno) {
+            this.cmd = cmd;
+            this.priority = priority;
+            __seqno = seqno;
+            __queuedAt = System.nanoTime();
+        }
+
+        public boolean isSuccess() {
+            return !cancelled && cmd.isNormalExit() && (0 == cmd.getExitValue());
+        }
+
+        public Duration getWaitTime() {
+            return Duration.ofNanos(((0 < __startedAt) ? __startedAt : __finishedAt) - __queuedAt);
+        }
+
+        public Duration getRunTime() {
+            return Duration.ofNanos((0 < __startedAt) ? (__finishedAt - __startedAt) : 0);
+        }
+
+        public final RunCmd cmd;
+        public final int priority;
+        /**
+         * Never started (due to fail fast).
+         */
+        public boolean cancelled = false;
+        private final long __seqno, __queuedAt;
+        private long __startedAt = 0, __finishedAt = 0;
+    }
+
+    /**
+     * Aggregated (and progress) statistics.
+     */
+    public static class Summary {
+        public int total = 0, completed = 0, running = 0, queued = 0;
+        public int succeeded = 0, failed = 0, exceptions = 0, timeouts = 0, cancelled = 0;
+        /**
+         * Count of (normal) exits by exit value.
+         */
+        public final Map<Integer, Integer> exitValues = new TreeMap<>();
+        public Duration elapsed = Duration.ZERO, totalRunTime = Duration.ZERO, maxRunTime = Duration.ZERO;
+
+        /**
+         * @return completed commands per second.
+         */
+        public double getThroughput() {
+            final double sec = elapsed.toNanos() / 1.0e9;
+            return (0 < sec) ? (completed / sec) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d completed (%d running, %d queued): %d succeeded, %d failed, %d exceptions, %d timeouts, %d cancelled; %s elapsed, %.1f/sec",
+                    completed, total, running, queued, succeeded, failed, exceptions, timeouts, cancelled,
+                    Util.toHHMMSS(elapsed), getThroughput());
+        }
+    }
+
+    /**
+     * Get progress/summary snapshot.
+     *
+     * @return summary (so far).
+     */
+    public synchronized Summary getSummary() {
+        final Summary summary = new Summary();
+        summary.total = __total;
+        summary.completed = __summary.completed;
+        summary.running = __running;
+        summary.queued = __queue.size();
+        summary.succeeded = __summary.succeeded;
+        summary.failed = __summary.failed;
+        summary.exceptions = __summary.exceptions;
+        summary.timeouts = __summary.timeouts;
+        summary.cancelled = __summary.cancelled;
+        summary.exitValues.putAll(__summary.exitValues);
+        summary.totalRunTime = __summary.totalRunTime;
+        summary.maxRunTime = __summary.maxRunTime;
+        summary.elapsed = (0 < __startedAt) ? Duration.ofNanos(System.nanoTime() - __startedAt) : Duration.ZERO;
+        return summary;
+    }
+
+    private void __dispatch() {
+        final List<Result> started = new LinkedList<>();
+        final List<Result> cancelled = new LinkedList<>();
+        synchronized (this) {
+            while (!__queue.isEmpty() && (__stop || (__running < __parallelism))) {
+                final Result job = __queue.poll();
+                if (__stop) {
+                    job.cancelled = true;
+                    job.__finishedAt = System.nanoTime();
+                    cancelled.add(job);
+                } else {
+                    __running++;
+                    job.__startedAt = System.nanoTime();
+                    __active.add(job);
+                    started.add(job);
+                }
+            }
+        }
+        for (Result job : cancelled) __complete(job);
+        for (Result job : started) {
+            job.cmd.start().whenCompleteAsync((rc, ex) -> {
+                job.__finishedAt = System.nanoTime();
+                synchronized (this) {
+                    __running--;
+                    __active.remove(job);
+                }
+                __complete(job);
+                __dispatch();
+            }, RunCmd.getDefaultExecutor());
+        }
+    }
+
+    private void __complete(Result job) {
+        boolean stopNow = false;
+        synchronized (this) {
+            __summary.completed++;
+            if (job.cancelled) {
+                __summary.cancelled++;
+            } else if (RunCmd.ExitType.eTimeout == job.cmd.getExitType()) {
+                __summary.timeouts++;
+            } else if (!job.cmd.isNormalExit()) {
+                __summary.exceptions++;
+            } else {
+                __summary.exitValues.merge(job.cmd.getExitValue(), 1, Integer::sum);
+                if (job.isSuccess()) __summary.succeeded++;
+                else __summary.failed++;
+            }
+            if (!job.cancelled) {
+                final Duration runTime = job.getRunTime();
+                __summary.totalRunTime = __summary.totalRunTime.plus(runTime);
+                if (0 < runTime.compareTo(__summary.maxRunTime)) __summary.maxRunTime = runTime;
+                if ((Mode.eFailFast == __mode) && !job.isSuccess() && !__stop) {
+                    __stop = stopNow = true;
+                }
+            }
+        }
+        if (stopNow) {
+            final List<Result> active;
+            synchronized (this) {
+                active = new ArrayList<>(__active);
+            }
+            active.forEach(a -> a.cmd.destroy());
+        }
+        if (isNonNull(__onResult)) {
+            try {
+                __onResult.accept(job);
+            } catch (RuntimeException e) {
+                Util.logException(e);
+            }
+        }
+        synchronized (this) {
+            if (__summary.completed == __total) {
+                __done.complete(getSummary());
+            }
+        }
+    }
+
+    private final int __parallelism;
+    private final Mode __mode;
+    private Consumer<Result> __onResult = null;
+    private final PriorityBlockingQueue<Result> __queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparingInt((Result r) -> r.priority).reversed().thenComparingLong(r -> r.__seqno));
+    private final Set<Result> __active = new HashSet<>();
+    private final Summary __summary = new Summary();
+    private final CompletableFuture<Summary> __done = new CompletableFuture<>();
+    private long __seqno = 0, __startedAt = 0;
+    private int __total = 0, __running = 0;
+    private boolean __started = false, __stop = false;
+}
@@ -0,0 +1,427 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gblibx.Util.*;
+import static java.util.Objects.isNull;
+
+/**
+ * Persistent (on disk) cache of results of deterministic commands.
+ * Key is hash of argv, working directory, environment (all, or selected variables)
+ * and fingerprints of input files
+ * (mtime+size, as with {@link Util#outOfDate(String, String)}, or content).
+ * Outputs are stored content-addressed (identical outputs are stored once),
+ * and least recently used entries are evicted to keep store under max size.
+ * The store is indexed (and sized) in memory when opened, and then kept up to date:
+ * a store should only be used by one RunCmdCache (process) at a time.
+ * On hit, no process is spawned.
+ */
+public class RunCmdCache {
+    public enum Fingerprint {
+        eMtime,     //size+last modified (cheap)
+        eContent    //sha-256 of contents
+    }
+
+    public RunCmdCache(File dir, long maxBytes) throws IOException {
+        __entries = toPath(dir).resolve("entries");
+        __blobs = toPath(dir).resolve("blobs");
+        Files.createDirectories(__entries);
+        Files.createDirectories(__blobs);
+        __maxBytes = maxBytes;
+        __load();
+        evict();
+    }
+
+    /**
+     * Request (key) for cached run.
+     */
+    public static class Request {
+        public Request(String... argv) {
+            this.argv = Arrays.asList(argv);
+        }
+
+        /**
+         * Only key on these environment variables (default is entire environment).
+         *
+         * @param names variable names.
+         * @return this object.
+         */
+        public Request env(String... names) {
+            this.env.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        public Request inputs(File... files) {
+            this.inputs.addAll(Arrays.asList(files));
+            return this;
+        }
+
+        public Request fingerprint(Fingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+            return this;
+        }
+
+        public final List<String> argv;
+        public final SortedSet<String> env = new TreeSet<>();
+        public final List<File> inputs = new LinkedList<>();
+        public Fingerprint fingerprint = Fingerprint.eMtime;
+    }
+
+    public static class Result {
+        public int exitValue;
+        public byte[] stdout, stderr;
+        /**
+         * True if served from cache.
+         */
+        public boolean cached;
+
+        public String getStdout() {
+            return new String(stdout, StandardCharsets.UTF_8);
+        }
+
+        public String getStderr() {
+            return new String(stderr, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Set whether non-zero exits are cached.
+     *
+     * @param cacheFailures true to cache non-zero exits too.
+     * @return this object.
+     */
+    public RunCmdCache setCacheFailures(boolean cacheFailures) {
+        __cacheFailures = cacheFailures;
+        return this;
+    }
+
+    /**
+     * Get result from cache, else run command (and cache result).
+     *
+     * @param request command and inputs.
+     * @return result (null if command did not run normally).
+     * @throws IOException on cache (store) errors.
+     */
+    public Result run(Request request) throws IOException {
+        final String key = getKey(request);
+        final Result cached = __lookup(key);
+        if (isNonNull(cached)) {
+            __hits.incrementAndGet();
+            return cached;
+        }
+        __misses.incrementAndGet();
+        final ByteArrayOutputStream cout = new ByteArrayOutputStream(), cerr = new ByteArrayOutputStream();
+        final RunCmd rcmd = new RunCmd(request.argv, null, null)
+                .setCoutBytes(buf -> cout.write(buf.array(), buf.position(), buf.remaining()))
+                .setCerrBytes(buf -> cerr.write(buf.array(), buf.position(), buf.remaining()));
+        rcmd.run();
+        if (!rcmd.isNormalExit()) return null;
+        final Result result = new Result();
+        result.exitValue = rcmd.getExitValue();
+        result.stdout = cout.toByteArray();
+        result.stderr = cerr.toByteArray();
+        result.cached = false;
+        if ((0 == result.exitValue) || __cacheFailures) {
+            __store(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Compute cache key.
+     *
+     * @param request command and inputs.
+     * @return key (hex sha-256).
+     * @throws IOException if input cannot be read (content fingerprint).
+     */
+    public static String getKey(Request request) throws IOException {
+        final MessageDigest md = __sha256();
+        final Consumer<String> add = (s) -> {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            md.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            md.update((byte) ':');
+            md.update(bytes);
+        };
+        add.accept("argv");
+        request.argv.forEach(add);
+        add.accept("dir");
+        add.accept(System.getProperty("user.dir"));
+        add.accept("env");
+        final Map<String, String> env = System.getenv();
+        for (String name : request.env.isEmpty() ? new TreeSet<>(env.keySet()) : request.env) {
+            add.accept(name);
+            add.accept(String.valueOf(env.get(name)));
+        }
+        add.accept("inputs");
+        for (File input : request.inputs) {
+            add.accept(getAbsoluteFileName(input));
+            add.accept(fingerprint(input, request.fingerprint));
+        }
+        return __toHex(md.digest());
+    }
+
+    /**
+     * Fingerprint file.
+     *
+     * @param file file.
+     * @param how  mtime or content.
+     * @return fingerprint ("missing" if file does not exist).
+     * @throws IOException on read error.
+     */
+    public static String fingerprint(File file, Fingerprint how) throws IOException {
+        if (!file.exists()) return "missing";
+        if (Fingerprint.eMtime == how) {
+            return String.format("%d/%d", file.length(), file.lastModified());
+        }
+        final MessageDigest md = __sha256();
+        final byte[] buf = new byte[1 << 16];
+        try (InputStream ins = Files.newInputStream(toPath(file))) {
+            int n;
+            while (0 <= (n = ins.read(buf))) md.update(buf, 0, n);
+        }
+        return __toHex(md.digest());
+    }
+
+    public long getHits() {
+        return __hits.get();
+    }
+
+    public long getMisses() {
+        return __misses.get();
+    }
+
+    /**
+     * @return size of store.
+     */
+    public long getSize() {
+        return __size.get();
+    }
+
+    /**
+     * Remove least recently used entries (and unreferenced outputs) until store is under max size.
+     *
+     * @throws IOException on store error.
+     */
+    public synchronized void evict() throws IOException {
+        final Iterator<Map.Entry<String, Entry>> iter = __index.entrySet().iterator();
+        while (iter.hasNext() && (__size.get() > __maxBytes)) {
+            final Map.Entry<String, Entry> kv = iter.next();
+            iter.remove();
+            Files.deleteIfExists(__entries.resolve(kv.getKey()));
+            __release(kv.getValue());
+        }
+    }
+
+    /**
+     * Index entry.
+     */
+    private static class Entry {
+        private Entry(long size, String stdout, String stderr) {
+            this.size = size;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        private List<String> getBlobs() {
+            return Arrays.asList(stdout, stderr);
+        }
+
+        private final long size;
+        private final String stdout, stderr;
+    }
+
+    /**
+     * Index store: entries in lru order, and blob references.
+     * Unreferenced blobs (e.g., from an interrupted store) are removed.
+     */
+    private void __load() throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> paths = Files.list(__entries)) {
+            entries = paths.sorted(Comparator.comparing(RunCmdCache::__lastModified)).collect(Collectors.toList());
+        }
+        for (Path path : entries) {
+            try {
+                final JSONObject json = new JSONObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                final Entry entry = new Entry(__sizeOf(path), json.getString("stdout"), json.getString("stderr"));
+                __index.put(path.getFileName().toString(), entry);
+                __size.addAndGet(entry.size);
+                entry.getBlobs().forEach(hash -> __blobRefs.merge(hash, 1, Integer::sum));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(path);    //bad (or temp) entry
+            }
+        }
+        try (Stream<Path> blobs = Files.list(__blobs)) {
+            for (Path blob : blobs.collect(Collectors.toList())) {
+                final String hash = blob.getFileName().toString();
+                if (__blobRefs.containsKey(hash)) {
+                    final long size = __sizeOf(blob);
+                    __blobSizes.put(hash, size);
+                    __size.addAndGet(size);
+                } else {
+                    Files.deleteIfExists(blob);
+                }
+            }
+        }
+    }
+
+    private Result __lookup(String key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = __index.get(key);   //mark recently used
+        }
+        if (isNull(entry)) return null;
+        try {
+            final JSONObject json = new JSONObject(new String(Files.readAllBytes(__entries.resolve(key)), StandardCharsets.UTF_8));
+            final Result result = new Result();
+            result.exitValue = json.getInt("exitValue");
+            result.stdout = Files.readAllBytes(__blobs.resolve(entry.stdout));
+            result.stderr = Files.readAllBytes(__blobs.resolve(entry.stderr));
+            result.cached = true;
+            //persist lru order (for next open)
+            Files.setLastModifiedTime(__entries.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (IOException | RuntimeException e) {
+            return null;    //miss (or evicted while reading)
+        }
+    }
+
+    private synchronized void __store(String key, Result result) throws IOException {
+        final Map<String, Object> json = new HashMap<>();
+        json.put("exitValue", result.exitValue);
+        json.put("stdout", __storeBlob(result.stdout));
+        json.put("stderr", __storeBlob(result.stderr));
+        final byte[] bytes = fmtToJSON(json).getBytes(StandardCharsets.UTF_8);
+        __write(__entries.resolve(key), bytes);
+        final Entry was = __index.put(key, new Entry(bytes.length, (String) json.get("stdout"), (String) json.get("stderr")));
+        __size.addAndGet(bytes.length);
+        if (isNonNull(was)) __release(was);    //replaced (after new blob references added)
+        evict();
+    }
+
+    /**
+     * Store blob (if not already) and add reference to it.
+     *
+     * @return blob hash.
+     */
+    private String __storeBlob(byte[] data) throws IOException {
+        final String hash = __toHex(__sha256().digest(data));
+        if (!__blobSizes.containsKey(hash)) {
+            __write(__blobs.resolve(hash), data);
+            __blobSizes.put(hash, (long) data.length);
+            __size.addAndGet(data.length);
+        }
+        __blobRefs.merge(hash, 1, Integer::sum);
+        return hash;
+    }
+
+    /**
+     * Account for removed entry: drop its blob references (and unreferenced blobs).
+     */
+    private void __release(Entry entry) throws IOException {
+        __size.addAndGet(-entry.size);
+        for (String hash : entry.getBlobs()) {
+            if (0 < __blobRefs.merge(hash, -1, Integer::sum)) continue;
+            __blobRefs.remove(hash);
+            final Long size = __blobSizes.remove(hash);
+            if (isNonNull(size)) __size.addAndGet(-size);
+            Files.deleteIfExists(__blobs.resolve(hash));
+        }
+    }
+
+    /**
+     * Write file atomically (via temp and rename).
+     *
+     * @return bytes written.
+     */
+    private static long __write(Path path, byte[] data) throws IOException {
+        final Path tmp = Files.createTempFile(path.getParent(), ".tmp", null);
+        Files.write(tmp, data);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return data.length;
+    }
+
+    private static long __sizeOf(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime __lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest __sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String __toHex(byte[] bytes) {
+        final StringBuilder sbuf = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) sbuf.append(String.format("%02x", b));
+        return sbuf.toString();
+    }
+
+    private final Path __entries, __blobs;
+    private final long __maxBytes;
+    private final AtomicLong __size = new AtomicLong(0);
+    /**
+     * Entries in access (lru) order.
+     */
+    private final LinkedHashMap<String, Entry> __index = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Integer> __blobRefs = new HashMap<>();
+    private final Map<String, Long> __blobSizes = new HashMap<>();
+    private final AtomicLong __hits = new AtomicLong(0), __misses = new AtomicLong(0);
+    private boolean __cacheFailures = false;
+}
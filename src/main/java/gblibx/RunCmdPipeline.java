@@ -0,0 +1,234 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static gblibx.Util.invariant;
+import static gblibx.Util.isNonNull;
+import static java.util.Objects.isNull;
+
+/**
+ * Run commands as a pipeline (cmd1 | cmd2 | ...) without a shell.
+ * Stages are connected kernel-to-kernel (ProcessBuilder.startPipeline),
+ * so only last stage's stdout (and each stage's stderr) passes through jvm.
+ * Exit value and resource usage are reported for each stage.
+ */
+public class RunCmdPipeline implements Runnable {
+    public RunCmdPipeline() {
+        this(System.out::println, System.err::println);
+    }
+
+    public RunCmdPipeline(Consumer<String> cout, Consumer<String> cerr) {
+        __cout = cout;
+        __cerr = cerr;
+    }
+
+    /**
+     * Add stage.
+     *
+     * @param argv command and arguments.
+     * @return this object.
+     */
+    public RunCmdPipeline add(String... argv) {
+        invariant(isNull(__processes), "pipeline already started");
+        __stages.add(new Stage(argv));
+        return this;
+    }
+
+    public RunCmdPipeline add(String cmd) {
+        return add(RunCmd.splitCmd(cmd));
+    }
+
+    /**
+     * Consume (last stage) stdout as raw chunks (see {@link RunCmd.ByteGobbler}).
+     *
+     * @param cout consumer.
+     * @return this object.
+     */
+    public RunCmdPipeline setCoutBytes(Consumer<ByteBuffer> cout) {
+        __coutBytes = cout;
+        return this;
+    }
+
+    public static class Stage {
+        private Stage(String[] argv) {
+            this.argv = argv;
+            builder = new ProcessBuilder(argv);
+        }
+
+        public int getExitValue() {
+            return __exitValue;
+        }
+
+        public ProcessUsage getUsage() {
+            return __usage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: exit=%d %s", Util.join(argv), __exitValue, __usage);
+        }
+
+        public final String[] argv;
+        /**
+         * Builder for stage: can be used to set environment, directory, stderr redirect.
+         * (stdin/stdout are set by pipeline.)
+         */
+        public final ProcessBuilder builder;
+        private int __exitValue = -666;
+        private final ProcessUsage __usage = new ProcessUsage();
+    }
+
+    public List<Stage> getStages() {
+        return __stages;
+    }
+
+    /**
+     * Start pipeline.
+     *
+     * @return future completed (with exit values of each stage) after all stages exit
+     * and all output is consumed.
+     */
+    public CompletableFuture<List<Integer>> start() {
+        invariant(!__stages.isEmpty(), "empty pipeline");
+        invariant(isNull(__processes), "pipeline already started");
+        final long startedAt = System.nanoTime();
+        try {
+            __processes = ProcessBuilder.startPipeline(
+                    __stages.stream().map(s -> s.builder).collect(Collectors.toList()));
+        } catch (IOException e) {
+            __exception = e;
+            return CompletableFuture.failedFuture(e);
+        }
+        final Executor executor = RunCmd.getDefaultExecutor();
+        final List<CompletableFuture<?>> waitFor = new ArrayList<>();
+        final List<ScheduledFuture<?>> samplers = new ArrayList<>();
+        final Process first = __processes.get(0), last = __processes.get(__processes.size() - 1);
+        try {
+            first.getOutputStream().close();    //no stdin
+        } catch (IOException e) {
+            ;//ignore
+        }
+        final ProcessUsage.CountingInputStream cout = new ProcessUsage.CountingInputStream(last.getInputStream());
+        waitFor.add(CompletableFuture.runAsync(isNonNull(__coutBytes)
+                ? new RunCmd.ByteGobbler(cout, __coutBytes)
+                : new RunCmd.StreamGobbler(cout, __cout), executor)
+                //stdout EOF is usually just before exit: sample (more often) until exit.
+                .thenCompose(v -> CompletableFuture.allOf(IntStream.range(0, __stages.size())
+                        .mapToObj(i -> RunCmd.sampleUntilExit(__stages.get(i).__usage,
+                                __processes.get(i), RunCmd.SAMPLE_MSEC))
+                        .toArray(CompletableFuture<?>[]::new))));
+        for (int i = 0; i < __processes.size(); ++i) {
+            final Process process = __processes.get(i);
+            final Stage stage = __stages.get(i);
+            final ProcessUsage.CountingInputStream cerr = new ProcessUsage.CountingInputStream(process.getErrorStream());
+            waitFor.add(CompletableFuture
+                    .runAsync(new RunCmd.StreamGobbler(cerr, __cerr), executor)
+                    .whenComplete((v, ex) -> stage.__usage.setStderrBytes(cerr.count)));
+            if (0 < RunCmd.SAMPLE_MSEC) {
+                samplers.add(ProcessUsage.getSampler().scheduleAtFixedRate(() -> stage.__usage.sample(process.pid()),
+                        0, RunCmd.SAMPLE_MSEC, TimeUnit.MILLISECONDS));
+            }
+            waitFor.add(process.onExit().thenAccept(p -> {
+                stage.__usage.setWall(Duration.ofNanos(System.nanoTime() - startedAt));
+                stage.__exitValue = p.exitValue();
+            }));
+        }
+        return CompletableFuture.allOf(waitFor.toArray(new CompletableFuture<?>[0])).handle((v, ex) -> {
+            samplers.forEach(sampler -> sampler.cancel(false));
+            final Stage lastStage = __stages.get(__stages.size() - 1);
+            lastStage.__usage.setStdoutBytes(cout.count);
+            for (Stage stage : __stages) {
+                ProcessUsage.record(stage.argv[0], stage.__usage);
+            }
+            if (isNonNull(ex)) {
+                __exception = (ex instanceof CompletionException) ? ex.getCause() : ex;
+                throw new CompletionException(__exception);
+            }
+            return getExitValues();
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            start().get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (isNull(__exception)) __exception = e;
+        }
+    }
+
+    /**
+     * Terminate all stages (and their descendants).
+     */
+    public void destroy() {
+        if (isNull(__processes)) return;
+        __processes.forEach(p -> RunCmd.destroyTree(p.toHandle()));
+    }
+
+    public List<Integer> getExitValues() {
+        return __stages.stream().map(Stage::getExitValue).collect(Collectors.toList());
+    }
+
+    /**
+     * @return exit value of last stage.
+     */
+    public int getExitValue() {
+        return __stages.get(__stages.size() - 1).getExitValue();
+    }
+
+    /**
+     * @return true if all stages ran and exit with 0 (i.e., pipefail semantics).
+     */
+    public boolean isSuccess() {
+        return isNull(__exception) && getExitValues().stream().allMatch(rc -> 0 == rc);
+    }
+
+    public Throwable getException() {
+        return __exception;
+    }
+
+    public String getCmd() {
+        return __stages.stream().map(s -> Util.join(s.argv)).collect(Collectors.joining(" | "));
+    }
+
+    private final List<Stage> __stages = new ArrayList<>();
+    private final Consumer<String> __cout, __cerr;
+    private Consumer<ByteBuffer> __coutBytes = null;
+    private List<Process> __processes = null;
+    private Throwable __exception = null;
+}
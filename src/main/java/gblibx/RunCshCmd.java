@@ -27,8 +27,11 @@
 
 package gblibx;
 
+import java.io.IOException;
 import java.util.function.Consumer;
 
+import static java.util.Objects.isNull;
+
 public class RunCshCmd {
     public static boolean run(String cmd) {
         return run(cmd, System.out::println, System.err::println);
@@ -54,6 +57,40 @@ public class RunCshCmd {
         return rcmd;
     }
 
+    /**
+     * Run command in (pooled) persistent csh session (see {@link CshSession}).
+     * Avoids fork/exec of new shell per command.
+     * NOTE: environment and directory changes persist in the session.
+     *
+     * @param cmd  command.
+     * @param cout stdout consumer.
+     * @param cerr stderr consumer.
+     * @return true if command exits with 0.
+     */
+    public static boolean runPooled(String cmd, Consumer<String> cout, Consumer<String> cerr) {
+        try {
+            return getPool().run(cmd, cout, cerr).isSuccess();
+        } catch (IOException | InterruptedException e) {
+            Util.logException(e);
+            return false;
+        }
+    }
+
+    public static boolean runPooled(String cmd) {
+        return runPooled(cmd, System.out::println, System.err::println);
+    }
+
+    public static synchronized CshSession.Pool getPool() {
+        if (isNull(__pool)) {
+            __pool = new CshSession.Pool(POOL_SIZE);
+        }
+        return __pool;
+    }
+
+    public static final int POOL_SIZE = Integer.parseInt(System.getProperty("gblibx.RunCshCmd.poolSize", "8"));
+
+    private static CshSession.Pool __pool = null;
+
     private static final String CSH_OPTS = System.getProperty("csh.opts", "-fc");
     private static final String CSH = System.getProperty("csh.path", "/bin/csh");
 
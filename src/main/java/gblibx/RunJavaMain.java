@@ -0,0 +1,452 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static gblibx.Util.invariant;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Run java main(String[]) in this (warm) JVM, instead of forking a JVM.
+ * Same usage as {@link RunCmd}: start()/run(), then getExitValue()/getExitType().
+ * <p>
+ * Each invocation:
+ * <ul>
+ *     <li>loads the main class in its own (child) class loader, so static state is not shared;</li>
+ *     <li>has System.out/err redirected to its consumers (thread-scoped, inherited by threads
+ *     started while it runs, until it ends: then those threads drop it);</li>
+ *     <li>has System.exit(status) intercepted: the invocation ends with status as exit value.</li>
+ * </ul>
+ * Invocations run concurrently on the (shared) executor.
+ * The first start() replaces System.out/err (once, for this JVM) with streams which
+ * dispatch to the current invocation (else to the original streams),
+ * and installs the exit trap ({@link #trapExit()}); {@link #uninstall()} restores both.
+ * <p>
+ * NOTE: intercepting System.exit needs a (JVM-wide) SecurityManager: deprecated for removal,
+ * refused by later jdks (unless -Djava.security.manager=allow), and which jdk 17+ warns about
+ * on install. If it cannot be installed, start() is rejected (since System.exit would exit this JVM),
+ * unless {@link #setExitTrapRequired(boolean)} false (for mains known not to call it).
+ * Threads started by main (and still running when main returns) are not waited for.
+ */
+public class RunJavaMain {
+    public RunJavaMain(String mainClass, String... args) {
+        this(mainClass, args, line -> __OUT.println(line), line -> __ERR.println(line));
+    }
+
+    public RunJavaMain(String mainClass, String[] args, Consumer<String> cout, Consumer<String> cerr) {
+        __mainClass = mainClass;
+        __args = args;
+        __cout = cout;
+        __cerr = cerr;
+    }
+
+    public RunJavaMain setCout(Consumer<String> cout) {
+        __cout = cout;
+        return this;
+    }
+
+    public RunJavaMain setCerr(Consumer<String> cerr) {
+        __cerr = cerr;
+        return this;
+    }
+
+    /**
+     * Set class path to load main class (and its dependencies) from.
+     * Default is the class path of this JVM (java.class.path).
+     *
+     * @param classPath class path elements (jars or directories).
+     * @return this object.
+     */
+    public RunJavaMain setClassPath(File... classPath) {
+        __classPath = new URL[classPath.length];
+        for (int i = 0; i < classPath.length; ++i) {
+            try {
+                __classPath[i] = classPath[i].toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set whether start() is rejected if System.exit cannot be intercepted (default true).
+     *
+     * @param required false to run (untrapped) anyway.
+     * @return this object.
+     */
+    public RunJavaMain setExitTrapRequired(boolean required) {
+        __exitTrapRequired = required;
+        return this;
+    }
+
+    public RunJavaMain setExecutor(Executor executor) {
+        __executor = executor;
+        return this;
+    }
+
+    public String getCmd() {
+        return __mainClass + ((0 < __args.length) ? " " + Util.join(__args) : "");
+    }
+
+    /**
+     * Start main and return without waiting.
+     *
+     * @return future which completes with exit value.
+     * @throws RuntimeException if System.exit cannot be intercepted (and is required to be).
+     */
+    public CompletableFuture<Integer> start() {
+        __install();
+        invariant(!__exitTrapRequired || trapExit(),
+                "System.exit cannot be intercepted (need -Djava.security.manager=allow)");
+        final Executor executor = nonNull(__executor) ? __executor : RunCmd.getDefaultExecutor();
+        return CompletableFuture.supplyAsync(this::__call, executor);
+    }
+
+    /**
+     * Run main and wait for completion.
+     */
+    public void run() {
+        start().join();
+    }
+
+    public int getExitValue() {
+        return __exitValue;
+    }
+
+    public RunCmd.ExitType getExitType() {
+        return __exitType;
+    }
+
+    public boolean isNormalExit() {
+        return RunCmd.ExitType.eNormal == getExitType();
+    }
+
+    public Exception getException() {
+        return __exception;
+    }
+
+    /**
+     * Enable interception of System.exit by invocations (done by first start()), by installing
+     * a (JVM-wide) SecurityManager which only traps exit of invocation threads (see NOTE above).
+     *
+     * @return true if System.exit is (now) intercepted (else it exits this JVM).
+     */
+    public static synchronized boolean trapExit() {
+        __install();
+        if (!__exitTrapped) __exitTrapped = __installExitTrap();
+        return __exitTrapped;
+    }
+
+    /**
+     * @return true if System.exit is intercepted (else it exits this JVM).
+     */
+    public static synchronized boolean isExitTrapped() {
+        return __exitTrapped;
+    }
+
+    /**
+     * Restore original System.out/err, and remove exit trap (e.g., when done, or for tests).
+     * A later start() installs them again.
+     */
+    @SuppressWarnings("removal")
+    public static synchronized void uninstall() {
+        if (__installed) {
+            System.setOut(__OUT);
+            System.setErr(__ERR);
+            __installed = false;
+        }
+        if (__exitTrapped) {
+            if (System.getSecurityManager() instanceof ExitTrap) System.setSecurityManager(null);
+            __exitTrapped = false;
+        }
+    }
+
+    private int __call() {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader context = thread.getContextClassLoader();
+        final LineOutputStream cout = new LineOutputStream(__cout), cerr = new LineOutputStream(__cerr);
+        final Streams streams = new Streams(new PrintStream(cout, true), new PrintStream(cerr, true));
+        __CURRENT.set(streams);
+        try (URLClassLoader loader = new URLClassLoader(
+                isNull(__classPath) ? __CLASS_PATH : __classPath,
+                ClassLoader.getPlatformClassLoader())) {
+            thread.setContextClassLoader(loader);
+            Class.forName(__mainClass, true, loader)
+                    .getMethod("main", String[].class)
+                    .invoke(null, (Object) __args);
+            __setExit(0);
+        } catch (InvocationTargetException | ExceptionInInitializerError e) {
+            //from main, or static initializer
+            final Throwable cause = e.getCause();
+            if (cause instanceof ExitException) {
+                __setExit(((ExitException) cause).status);
+            } else {
+                __setException(cause);
+            }
+        } catch (ReflectiveOperationException | IOException | LinkageError e) {
+            __setException(e);
+        } finally {
+            //threads (e.g., of pools) started during invocation must not keep its streams.
+            streams.close();
+            cout.close();
+            cerr.close();
+            __CURRENT.remove();
+            thread.setContextClassLoader(context);
+        }
+        return __exitValue;
+    }
+
+    private void __setExit(int status) {
+        __exitValue = status;
+        __exitType = RunCmd.ExitType.eNormal;
+    }
+
+    private void __setException(Throwable ex) {
+        __exception = (ex instanceof Exception) ? (Exception) ex : new CompletionException(ex);
+        __exitType = RunCmd.ExitType.eException;
+    }
+
+    /**
+     * Replace System.out/err (once) with streams which dispatch on (invocation of) current thread.
+     */
+    private static synchronized void __install() {
+        if (__installed) return;
+        __installed = true;
+        System.setOut(new PrintStream(new Dispatch(__OUT, true), true));
+        System.setErr(new PrintStream(new Dispatch(__ERR, false), true));
+    }
+
+    /**
+     * All (deprecated for removal) SecurityManager use is here (and ExitTrap).
+     *
+     * @return true if installed.
+     */
+    @SuppressWarnings("removal")
+    private static boolean __installExitTrap() {
+        try {
+            if (isNull(System.getSecurityManager())) {
+                System.setSecurityManager(new ExitTrap());
+                return true;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            ;//refused by jdk (or existing security manager)
+        }
+        return false;
+    }
+
+    /**
+     * Get streams of current (running) invocation.
+     * Streams (inherited by thread) of ended invocation are dropped.
+     *
+     * @return streams (null if none).
+     */
+    private static Streams __current() {
+        final Streams streams = __CURRENT.get();
+        if (isNull(streams)) return null;
+        if (streams.isClosed()) {
+            __CURRENT.remove();
+            return null;
+        }
+        return streams;
+    }
+
+    /**
+     * Streams of invocation: released once invocation ends, since threads started by
+     * the invocation (which inherit this) may outlive it.
+     */
+    private static class Streams {
+        private Streams(PrintStream out, PrintStream err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        private void close() {
+            out = null;
+            err = null;
+        }
+
+        private boolean isClosed() {
+            return isNull(out);
+        }
+
+        private volatile PrintStream out, err;
+    }
+
+    private static class Dispatch extends OutputStream {
+        private Dispatch(PrintStream dflt, boolean isOut) {
+            __dflt = dflt;
+            __isOut = isOut;
+        }
+
+        private PrintStream __target() {
+            final Streams streams = __current();
+            final PrintStream target = isNull(streams) ? null : (__isOut ? streams.out : streams.err);
+            return isNull(target) ? __dflt : target;
+        }
+
+        @Override
+        public void write(int b) {
+            __target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            __target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            __target().flush();
+        }
+
+        private final PrintStream __dflt;
+        private final boolean __isOut;
+    }
+
+    /**
+     * Split (UTF-8) bytes into lines for consumer.
+     * Consumer is called with redirection suspended (so it can print).
+     */
+    private static class LineOutputStream extends OutputStream {
+        private LineOutputStream(Consumer<String> to) {
+            __to = to;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if ('\n' == b) {
+                __emit();
+            } else {
+                __line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; ++i) write(b[i]);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (0 < __line.size()) __emit();
+        }
+
+        private void __emit() {
+            final String line = __line.toString(java.nio.charset.StandardCharsets.UTF_8);
+            __line.reset();
+            final Streams streams = __CURRENT.get();
+            __CURRENT.remove();
+            try {
+                __to.accept(line);
+            } finally {
+                if (nonNull(streams)) __CURRENT.set(streams);
+            }
+        }
+
+        private final Consumer<String> __to;
+        private final ByteArrayOutputStream __line = new ByteArrayOutputStream();
+    }
+
+    private static class ExitException extends SecurityException {
+        private static final long serialVersionUID = 1L;
+
+        private ExitException(int status) {
+            super(String.format("System.exit(%d)", status));
+            this.status = status;
+        }
+
+        private final int status;
+    }
+
+    @SuppressWarnings("removal")
+    private static class ExitTrap extends SecurityManager {
+        @Override
+        public void checkExit(int status) {
+            if (nonNull(__current())) throw new ExitException(status);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            //allow all
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            //allow all
+        }
+    }
+
+    private static URL[] __classPath() {
+        final List<URL> urls = new ArrayList<>();
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (path.isEmpty()) continue;
+            try {
+                urls.add(new File(path).toURI().toURL());
+            } catch (MalformedURLException e) {
+                invariant(false, e.getMessage());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Original System.out/err.
+     */
+    private static final PrintStream __OUT = System.out, __ERR = System.err;
+    private static final URL[] __CLASS_PATH = __classPath();
+    private static final InheritableThreadLocal<Streams> __CURRENT = new InheritableThreadLocal<>();
+    private static boolean __installed = false, __exitTrapped = false;
+
+    private final String __mainClass;
+    private final String[] __args;
+    private Consumer<String> __cout, __cerr;
+    private URL[] __classPath = null;
+    private Executor __executor = null;
+    private boolean __exitTrapRequired = true;
+    private volatile int __exitValue = -666;
+    private volatile RunCmd.ExitType __exitType = RunCmd.ExitType.eUnknown;
+    private volatile Exception __exception = null;
+}
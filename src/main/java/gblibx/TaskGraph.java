@@ -0,0 +1,417 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gblibx.Util.*;
+import static java.util.Objects.isNull;
+
+/**
+ * Make-like graph of tasks: each node (re)builds a target from dependencies
+ * (files and/or other nodes) by running a {@link RunCmd} or java action.
+ * Staleness (as ninja/redo): each built node records a stamp (mtimes of its target and
+ * dependencies); a node is stale if its target or any dependency is missing, or its
+ * stamp changed. Without a stamp (first run), staleness is as
+ * {@link Util#outOfDate(String, String)}: target older than any dependency.
+ * Stamps persist across runs of a graph, and (see {@link #setStampFile(File)}) processes.
+ * File stats are cached (and done in one parallel batch up front).
+ * Ready nodes run in parallel (up to limit); dependents of failed nodes are skipped.
+ * Early cutoff: if a rebuilt target has the same content as before, its previous
+ * mtime is restored, so dependents (now, or on a later run) are not rebuilt.
+ * NOTE: the restored target is then older than the changed dependency: only its stamp
+ * keeps it up to date, so without a stamp file a new graph (process) rebuilds it each run.
+ */
+public class TaskGraph {
+    public interface Action {
+        /**
+         * Build target.
+         *
+         * @return true on success.
+         * @throws Exception on failure.
+         */
+        boolean run() throws Exception;
+    }
+
+    /**
+     * Create action which runs command.
+     *
+     * @param cmd command to run.
+     * @return action: success iff. normal exit with 0.
+     */
+    public static Action action(RunCmd cmd) {
+        return () -> {
+            cmd.run();
+            return cmd.isNormalExit() && (0 == cmd.getExitValue());
+        };
+    }
+
+    public enum State {
+        ePending, eUpToDate, eBuilt, eUnchanged, eFailed, eSkipped
+    }
+
+    public class Node {
+        private Node(String target, Action action) {
+            this.target = (isNonNull(target)) ? getAbsoluteFileName(target) : null;
+            this.action = action;
+        }
+
+        /**
+         * Add dependencies.
+         *
+         * @param deps file names (String or File) or other nodes.
+         * @return this object.
+         */
+        public Node dependsOn(Object... deps) {
+            for (Object dep : deps) {
+                if (dep instanceof Node) {
+                    __deps.add((Node) dep);
+                } else {
+                    __files.add(getAbsoluteFileName(dep.toString()));
+                }
+            }
+            return this;
+        }
+
+        public State getState() {
+            return __state;
+        }
+
+        public Exception getException() {
+            return __exception;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s)", isNonNull(target) ? target : "<phony>", __state);
+        }
+
+        /**
+         * Target file (null for phony: always run).
+         */
+        public final String target;
+        public final Action action;
+        private final List<Node> __deps = new ArrayList<>();
+        private final List<String> __files = new ArrayList<>();
+        private final List<Node> __dependents = new ArrayList<>();
+        private final AtomicInteger __waitingFor = new AtomicInteger();
+        private volatile State __state = State.ePending;
+        private Exception __exception = null;
+    }
+
+    /**
+     * Add node.
+     *
+     * @param target target file name (null for phony).
+     * @param action builds target.
+     * @return new node.
+     */
+    public Node add(String target, Action action) {
+        final Node node = new Node(target, action);
+        __nodes.add(node);
+        return node;
+    }
+
+    public Node add(String target, RunCmd cmd) {
+        return add(target, action(cmd));
+    }
+
+    /**
+     * Persist node stamps to file (loaded now, if exists, and saved after each run).
+     *
+     * @param file stamp file.
+     * @return this object.
+     * @throws IOException if existing file cannot be read.
+     */
+    public TaskGraph setStampFile(File file) throws IOException {
+        __stampFile = file;
+        if (file.exists()) {
+            final JSONObject json = new JSONObject(Files.readString(file.toPath()));
+            for (String target : json.keySet()) {
+                final JSONObject deps = json.getJSONObject(target);
+                final Map<String, Long> stamp = new TreeMap<>();
+                for (String dep : deps.keySet()) stamp.put(dep, deps.getLong(dep));
+                __stamps.put(target, stamp);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Enable (default) or disable early cutoff (see class doc: use with {@link #setStampFile(File)}).
+     *
+     * @param earlyCutoff true to restore mtime of unchanged rebuilt targets.
+     * @return this object.
+     */
+    public TaskGraph setEarlyCutoff(boolean earlyCutoff) {
+        __earlyCutoff = earlyCutoff;
+        return this;
+    }
+
+    public List<Node> getNodes() {
+        return __nodes;
+    }
+
+    public Map<State, Integer> run() throws InterruptedException {
+        return run(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Run (stale) nodes.
+     *
+     * @param parallelism max nodes run concurrently.
+     * @return count of nodes by (final) state.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws UncheckedIOException if stamp file cannot be written.
+     */
+    public Map<State, Integer> run(int parallelism) throws InterruptedException {
+        invariant(0 < parallelism, "parallelism must be > 0");
+        __prepare();
+        final ExecutorService pool = Executors.newFixedThreadPool(parallelism, newDaemonThreadFactory("gblibx-taskgraph"));
+        __remaining = new CountDownLatch(__nodes.size());
+        //roots first: once running, dependents are scheduled (once) by __done
+        final List<Node> roots = new ArrayList<>();
+        for (Node node : __nodes) {
+            if (0 == node.__waitingFor.get()) roots.add(node);
+        }
+        try {
+            for (Node node : roots) pool.execute(() -> __build(node, pool));
+            __remaining.await();
+        } finally {
+            pool.shutdownNow();
+        }
+        if (isNonNull(__stampFile)) {
+            try {
+                Files.writeString(__stampFile.toPath(), new JSONObject(__stamps).toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final Map<State, Integer> counts = new EnumMap<>(State.class);
+        for (Node node : __nodes) counts.merge(node.__state, 1, Integer::sum);
+        return counts;
+    }
+
+    /**
+     * Link dependents, check for cycles, and stat all files (in one parallel batch).
+     */
+    private void __prepare() {
+        final Set<String> files = new HashSet<>();
+        for (Node node : __nodes) {
+            node.__state = State.ePending;
+            node.__dependents.clear();
+        }
+        for (Node node : __nodes) {
+            node.__waitingFor.set(node.__deps.size());
+            for (Node dep : node.__deps) dep.__dependents.add(node);
+            files.addAll(node.__files);
+            if (isNonNull(node.target)) files.add(node.target);
+        }
+        //Kahn: all nodes must be reachable from roots.
+        final Map<Node, Integer> waiting = new HashMap<>();
+        final Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : __nodes) {
+            waiting.put(node, node.__deps.size());
+            if (node.__deps.isEmpty()) ready.add(node);
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            final Node node = ready.poll();
+            visited++;
+            for (Node dependent : node.__dependents) {
+                if (0 == waiting.merge(dependent, -1, Integer::sum)) ready.add(dependent);
+            }
+        }
+        invariant(visited == __nodes.size(), "dependency cycle");
+        __stats.clear();
+        files.parallelStream().forEach(this::__restat);
+    }
+
+    private void __build(Node node, ExecutorService pool) {
+        try {
+            if (!__isStale(node)) {
+                node.__state = State.eUpToDate;
+            } else {
+                final Path target = isNonNull(node.target) ? toPath(new File(node.target)) : null;
+                final long before = isNonNull(target) ? __mtime(node.target) : __MISSING;
+                final byte[] digest = (__earlyCutoff && (__MISSING != before)) ? __digest(target) : null;
+                boolean ok;
+                try {
+                    ok = node.action.run();
+                } catch (Exception e) {
+                    node.__exception = e;
+                    ok = false;
+                }
+                if (!ok) {
+                    node.__state = State.eFailed;
+                    if (isNonNull(target)) __stamps.remove(node.target);
+                } else {
+                    node.__state = State.eBuilt;
+                    if (isNonNull(target)) {
+                        if (isNonNull(digest) && Files.exists(target) && Arrays.equals(digest, __digest(target))) {
+                            Files.setLastModifiedTime(target, FileTime.fromMillis(before));
+                            node.__state = State.eUnchanged;
+                        }
+                        __restat(node.target);
+                    }
+                }
+            }
+            if (isNonNull(node.target) && (State.eFailed != node.__state)) {
+                __stamps.put(node.target, __stampOf(node));
+            }
+        } catch (IOException | RuntimeException e) {
+            node.__exception = e;
+            node.__state = State.eFailed;
+        } finally {
+            //also on Error: else run() waits forever
+            if (State.ePending == node.__state) node.__state = State.eFailed;
+            __done(node, pool);
+        }
+    }
+
+    /**
+     * Node finished: schedule ready dependents, or skip (transitive) dependents of failed node.
+     * Skipped nodes are a worklist (not recursion), so long chains do not overflow stack.
+     */
+    private void __done(Node node, ExecutorService pool) {
+        final Deque<Node> done = new ArrayDeque<>();
+        done.add(node);
+        while (!done.isEmpty()) {
+            final Node next = done.poll();
+            final boolean failed = (State.eFailed == next.__state) || (State.eSkipped == next.__state);
+            __remaining.countDown();
+            for (Node dependent : next.__dependents) {
+                if (failed) {
+                    if (State.ePending == dependent.__state) {
+                        synchronized (dependent) {
+                            if (State.ePending != dependent.__state) continue;
+                            dependent.__state = State.eSkipped;
+                        }
+                        done.add(dependent);
+                    }
+                } else if (0 == dependent.__waitingFor.decrementAndGet()) {
+                    synchronized (dependent) {
+                        if (State.ePending != dependent.__state) continue;
+                    }
+                    pool.execute(() -> __build(dependent, pool));
+                }
+            }
+        }
+    }
+
+    private boolean __isStale(Node node) {
+        if (isNull(node.target)) return true;
+        final long tgt = __mtime(node.target);
+        if (__MISSING == tgt) return true;
+        for (String file : node.__files) {
+            if (__MISSING == __mtime(file)) return true;
+        }
+        for (Node dep : node.__deps) {
+            if (isNull(dep.target) && (State.eUpToDate != dep.__state)) return true;    //phony ran
+        }
+        final Map<String, Long> stamp = __stamps.get(node.target);
+        if (isNonNull(stamp)) return !stamp.equals(__stampOf(node));
+        for (String file : node.__files) {
+            if (tgt < __mtime(file)) return true;
+        }
+        for (Node dep : node.__deps) {
+            if (isNonNull(dep.target) && (tgt < __mtime(dep.target))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get stamp of node: current mtimes of target and (file) dependencies.
+     */
+    private Map<String, Long> __stampOf(Node node) {
+        final Map<String, Long> stamp = new TreeMap<>();
+        stamp.put(node.target, __mtime(node.target));
+        for (String file : node.__files) stamp.put(file, __mtime(file));
+        for (Node dep : node.__deps) {
+            if (isNonNull(dep.target)) stamp.put(dep.target, __mtime(dep.target));
+        }
+        return stamp;
+    }
+
+    private long __mtime(String fname) {
+        final Long mtime = __stats.get(fname);
+        return isNonNull(mtime) ? mtime : __restat(fname);
+    }
+
+    private long __restat(String fname) {
+        long mtime;
+        try {
+            mtime = Files.readAttributes(toPath(new File(fname)), BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            mtime = __MISSING;
+        }
+        __stats.put(fname, mtime);
+        return mtime;
+    }
+
+    private static byte[] __digest(Path path) throws IOException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] buf = new byte[1 << 16];
+        try (InputStream ins = Files.newInputStream(path)) {
+            int n;
+            while (0 <= (n = ins.read(buf))) md.update(buf, 0, n);
+        }
+        return md.digest();
+    }
+
+    private static final long __MISSING = Long.MIN_VALUE;
+
+    private final List<Node> __nodes = new ArrayList<>();
+    private final ConcurrentHashMap<String, Long> __stats = new ConcurrentHashMap<>();
+    /**
+     * Target to stamp (as of last build).
+     */
+    private final ConcurrentHashMap<String, Map<String, Long>> __stamps = new ConcurrentHashMap<>();
+    private File __stampFile = null;
+    private boolean __earlyCutoff = true;
+    private CountDownLatch __remaining;
+}
@@ -47,9 +47,14 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.IsoFields;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -668,11 +673,60 @@ public class Util {
         return ldt.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
     }
 
+    /**
+     * Get (simple) class name of method on call stack.
+     * Only walks the needed frames (no full stack trace is created).
+     *
+     * @param i index as with Thread.getStackTrace(): [2] is caller of this method.
+     * @return class name (without package).
+     */
     public static String getClassOfMethod(int i) {
-        String[] eles = Thread.currentThread().getStackTrace()[i].getClassName().split("\\.");
-        return eles[eles.length - 1];
+        invariant(1 <= i);
+        return __WALKER
+                .walk(frames -> frames.skip(i - 1).findFirst())
+                .map(frame -> __SIMPLE_NAME.get(frame.getDeclaringClass()))
+                .orElseThrow(() -> new ArrayIndexOutOfBoundsException(i));
     }
 
+    /**
+     * Get caller location (as Class.method:line) of first frame not in this class
+     * and not matched by skip.
+     * Locations are cached by call site, so repeated calls do not allocate strings.
+     *
+     * @param skip true for frames (classes) to skip (e.g., logger classes).
+     * @return caller location or null.
+     */
+    public static String getCaller(Predicate<Class<?>> skip) {
+        return __WALKER
+                .walk(frames -> frames
+                        .filter(frame -> (Util.class != frame.getDeclaringClass())
+                                && !skip.test(frame.getDeclaringClass()))
+                        .findFirst())
+                .map(frame -> __CALL_SITES
+                        .get(frame.getDeclaringClass())
+                        .computeIfAbsent(frame.getLineNumber(),
+                                line -> String.format("%s.%s:%d", __SIMPLE_NAME.get(frame.getDeclaringClass()),
+                                        frame.getMethodName(), line)))
+                .orElse(null);
+    }
+
+    private static final StackWalker __WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static final ClassValue<String> __SIMPLE_NAME = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            final String name = type.getName();
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+    };
+
+    private static final ClassValue<Map<Integer, String>> __CALL_SITES = new ClassValue<>() {
+        @Override
+        protected Map<Integer, String> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     public static String getClassOfMethod() {
         return getClassOfMethod(3);
     }
@@ -706,16 +760,100 @@ public class Util {
         return getCurrentThread().getId();
     }
 
+    /**
+     * Create factory for (named) daemon threads.
+     * Used for shared pools which should not keep the JVM alive.
+     *
+     * @param prefix thread name prefix.
+     * @return thread factory.
+     */
+    public static ThreadFactory newDaemonThreadFactory(String prefix) {
+        final AtomicInteger n = new AtomicInteger(0);
+        return (runnable) -> {
+            final Thread thread = new Thread(runnable, String.format("%s-%d", prefix, n.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Log exception with stack trace.
+     * Repeated exceptions (same fingerprint: see {@link ExceptionFingerprints})
+     * are only printed in full once per LOG_EXCEPTION_WINDOW_SEC, and then
+     * with a count of those suppressed.
+     * Counts still suppressed when a window expires are printed (without trace)
+     * once the window expires.
+     *
+     * @param os stream to print to.
+     * @param ex exception to log.
+     */
     public static void logException(PrintStream os, Exception ex) {
+        logException(os, ex, __EXCEPTIONS);
+    }
+
+    static void logException(PrintStream os, Exception ex, ExceptionFingerprints fingerprints) {
+        ExceptionFingerprints.Report report = null;
+        if (isNonNull(fingerprints)) {
+            report = fingerprints.record(ex);
+            if (isNull(report)) {
+                __flushLater(os, fingerprints);
+                return;
+            }
+        }
         synchronized (os) {
             final Thread thread = Thread.currentThread();
             os.printf("%s (%s:%d) {\n", tznow(), thread.getName(), thread.getId());
+            if (isNonNull(report) && (0 < report.suppressed)) {
+                os.printf("(repeated %d times in last %d sec)\n", report.suppressed, report.interval.toSeconds());
+            }
             ex.printStackTrace(os);
             os.println("}");
             os.flush();
         }
     }
 
+    /**
+     * Schedule (once) print of counts suppressed in windows which expire.
+     */
+    private static void __flushLater(PrintStream os, ExceptionFingerprints fingerprints) {
+        if (!__FLUSH_PENDING.add(fingerprints)) return;
+        final long delay = fingerprints.getWindow().toMillis();
+        CompletableFuture.runAsync(() -> {
+            __FLUSH_PENDING.remove(fingerprints);
+            final boolean more = fingerprints.flush(report -> {
+                synchronized (os) {
+                    os.printf("%s {\n(repeated %d times in last %d sec) %s\n}\n",
+                            tznow(), report.suppressed, report.interval.toSeconds(), report.entry);
+                    os.flush();
+                }
+            });
+            if (more) __flushLater(os, fingerprints);
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Get most frequent exceptions logged via logException.
+     *
+     * @param n max number to return.
+     * @return entries (empty if tracking disabled).
+     */
+    public static List<ExceptionFingerprints.Entry> getTopExceptions(int n) {
+        return isNonNull(__EXCEPTIONS) ? __EXCEPTIONS.getTop(n) : Collections.emptyList();
+    }
+
+    /**
+     * Window (in seconds) for logException to print repeated exceptions.
+     * 0 disables throttling (every exception printed in full).
+     */
+    public static final int LOG_EXCEPTION_WINDOW_SEC =
+            Integer.parseInt(System.getProperty("gblibx.util.logExceptionWindowSec", "5"));
+
+    private static final ExceptionFingerprints __EXCEPTIONS = (0 < LOG_EXCEPTION_WINDOW_SEC)
+            ? new ExceptionFingerprints(Duration.ofSeconds(LOG_EXCEPTION_WINDOW_SEC))
+            : null;
+
+    private static final Set<ExceptionFingerprints> __FLUSH_PENDING = ConcurrentHashMap.newKeySet();
+
     public static void logException(Exception ex) {
         logException(System.err, ex);
     }
@@ -726,10 +864,8 @@ public class Util {
             os.printf("%s (%s:%d) {\n", tznow(), thread.getName(), thread.getId());
             os.printf("Message: %s\n", msg);
             if (trace) {
-                final StackTraceElement[] eles = thread.getStackTrace();
-                for (int i = 0; i < eles.length; i++) {
-                    os.printf("  [%d] %s\n", i, eles[i]);
-                }
+                final int[] i = {0};
+                __WALKER.forEach(frame -> os.printf("  [%d] %s\n", i[0]++, frame));
             }
             os.println("}");
             os.flush();
@@ -0,0 +1,114 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static gblibx.EncryptedFileLogger.TAG_LENGTH;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptedFileLoggerTest {
+
+    final String kiv = "12345678ABCDEFGHHY^&UJKI**(OL:P)";
+
+    @Test
+    void roundTrip() throws Exception {
+        final SecretKey key = Encryptor.getSecretKey(kiv);
+        final File flog = File.createTempFile("gblibx", ".elog");
+        flog.deleteOnExit();
+        final StringBuilder expected = new StringBuilder();
+        try (EncryptedFileLogger logger = new EncryptedFileLogger(flog, key, false, 100)) {
+            for (int i = 0; i < 50; ++i) {
+                final String msg = String.format("message %d: café ☃", i);
+                logger.print(Logger.ELevel.eInfo, msg);
+                expected.append(msg).append(System.lineSeparator());
+            }
+        }
+        //append another segment
+        try (EncryptedFileLogger logger = new EncryptedFileLogger(flog, key, true, 64)) {
+            logger.print(Logger.ELevel.eInfo, "appended");
+            logger.flush();
+            logger.print(Logger.ELevel.eInfo, "again");
+            expected.append("appended").append(System.lineSeparator());
+            expected.append("again").append(System.lineSeparator());
+        }
+        assertEquals(expected.toString(), decrypt(flog, key));
+        //tamper
+        try (RandomAccessFile raf = new RandomAccessFile(flog, "rw")) {
+            raf.seek(30);
+            final int b = raf.read();
+            raf.seek(30);
+            raf.write(b ^ 0x1);
+        }
+        assertThrows(IOException.class, () -> decrypt(flog, key));
+    }
+
+    @Test
+    void truncated() throws Exception {
+        final SecretKey key = Encryptor.getSecretKey(kiv);
+        final File flog = File.createTempFile("gblibx", ".elog");
+        flog.deleteOnExit();
+        try (EncryptedFileLogger logger = new EncryptedFileLogger(flog, key, false, 64)) {
+            logger.print(Logger.ELevel.eInfo, "first");
+            logger.flush();
+            logger.print(Logger.ELevel.eInfo, "second");
+        }
+        assertEquals("first" + System.lineSeparator() + "second" + System.lineSeparator(), decrypt(flog, key));
+        //drop final chunk: LENGTH(4) SEQNO(4) TAG(16)
+        final byte[] sealed = java.nio.file.Files.readAllBytes(flog.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(flog, "rw")) {
+            raf.setLength(raf.length() - (4 + 4 + TAG_LENGTH) - ("second".length() + System.lineSeparator().length()));
+        }
+        assertThrows(IOException.class, () -> decrypt(flog, key));
+        //drop 1st data chunk (sequence gap)
+        final int hdr = 4 + 1 + 8, chunk = 4 + 4 + TAG_LENGTH + "first".length() + System.lineSeparator().length();
+        try (FileOutputStream os = new FileOutputStream(flog)) {
+            os.write(sealed, 0, hdr);
+            os.write(sealed, hdr + chunk, sealed.length - hdr - chunk);
+        }
+        assertThrows(IOException.class, () -> decrypt(flog, key));
+        assertThrows(RuntimeException.class, () -> new EncryptedFileLogger(flog, key, false, 3));
+    }
+
+    private static String decrypt(File flog, SecretKey key) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (EncryptedLogReader ins = new EncryptedLogReader(new FileInputStream(flog), key)) {
+            ins.transferTo(os);
+        }
+        return os.toString("UTF-8");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadTailCaptureTest {
+
+    @Test
+    void accept() {
+        final Random random = new Random(1234);
+        final byte[] data = new byte[10000];
+        random.nextBytes(data);
+        for (int[] sizes : new int[][]{{0, 0}, {100, 0}, {0, 100}, {100, 200}, {6000, 6000}, {10000, 0}}) {
+            final HeadTailCapture capture = new HeadTailCapture(sizes[0], sizes[1]);
+            for (int pos = 0; pos < data.length; ) {
+                final int n = Math.min(data.length - pos, 1 + random.nextInt(700));
+                capture.accept(ByteBuffer.wrap(data, pos, n));
+                pos += n;
+            }
+            final int head = Math.min(sizes[0], data.length);
+            final int tail = Math.min(sizes[1], data.length - head);
+            assertEquals(data.length, capture.getTotal());
+            assertEquals(data.length - head - tail, capture.getDiscarded());
+            assertArrayEquals(Arrays.copyOf(data, head), capture.getHead());
+            assertArrayEquals(Arrays.copyOfRange(data, data.length - tail, data.length), capture.getTail());
+        }
+    }
+
+    @Test
+    void runCommandStdout() {
+        final Util.ReadFileData rfd = RunCmd.runCommandStdout("seq 1 100000", 6, 7);
+        assertEquals("1\n2\n3\n", rfd.part1);
+        assertEquals("100000\n", rfd.part2);
+        final Util.ReadFileData all = RunCmd.runCommandStdout("seq 1 3", 6, 7);
+        assertEquals("1\n2\n3\n", all.part1);
+        assertNull(all.part2);
+    }
+}
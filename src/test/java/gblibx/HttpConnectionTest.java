@@ -0,0 +1,436 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static gblibx.Util.toMap;
+import static java.util.Objects.isNull;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpConnectionTest {
+    private static HttpServer __server;
+    private static int __port;
+    private static final AtomicInteger __flaky = new AtomicInteger(0), __batches = new AtomicInteger(0),
+            __etagRequests = new AtomicInteger(0), __received = new AtomicInteger(0);
+    private static final AtomicReference<String> __encoding = new AtomicReference<>();
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        final byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data);
+        }
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        final InputStream is = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(exchange.getRequestBody())
+                : exchange.getRequestBody();
+        return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @BeforeAll
+    static void start() throws IOException {
+        __server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        //echo request body (POST) or query (GET)
+        __server.createContext("/echo.json", ex -> {
+            final String body = body(ex);
+            respond(ex, 200, ex.getRequestMethod().equals("POST")
+                    ? body
+                    : String.format("{\"query\":\"%s\"}", ex.getRequestURI().getQuery()));
+        });
+        //echo (decoded) request body, noting Content-Encoding
+        __server.createContext("/gzipped.json", ex -> {
+            __encoding.set(ex.getRequestHeaders().getFirst("Content-Encoding"));
+            respond(ex, 200, body(ex));
+        });
+        //count complete (JSON) request bodies
+        __server.createContext("/sink.json", ex -> {
+            try {
+                new JSONObject(body(ex));
+                __received.incrementAndGet();
+                respond(ex, 200, "{}");
+            } catch (IOException | RuntimeException e) {
+                respond(ex, 400, String.valueOf(e.getMessage()));
+            }
+        });
+        __server.createContext("/list.json", ex -> respond(ex, 200, "[1, 2, 3]"));
+        __server.createContext("/fail.json", ex -> respond(ex, 500, "oops"));
+        //respond to each (batched) item
+        __server.createContext("/batch.json", ex -> {
+            __batches.incrementAndGet();
+            final JSONArray items = new JSONArray(body(ex));
+            final JSONArray resp = new JSONArray();
+            for (int i = 0; i < items.length(); ++i) {
+                resp.put(2 * items.getJSONObject(i).getInt("i"));
+            }
+            respond(ex, 200, resp.toString());
+        });
+        //compressed response (if accepted)
+        __server.createContext("/gzip.json", ex -> {
+            final String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+            final byte[] body = "{\"text\": \"gzip gzip gzip gzip\"}".getBytes(StandardCharsets.UTF_8);
+            if (isNull(accept) || !accept.contains("gzip")) {
+                respond(ex, 200, new String(body, StandardCharsets.UTF_8));
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream os = new GZIPOutputStream(ex.getResponseBody())) {
+                os.write(body);
+            }
+        });
+        //conditional GET
+        __server.createContext("/etag.json", ex -> {
+            __etagRequests.incrementAndGet();
+            ex.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+            } else {
+                respond(ex, 200, "{\"version\": 1}");
+            }
+        });
+        //fail (transient) every other request
+        __server.createContext("/flaky.json", ex -> {
+            if (0 == __flaky.getAndIncrement() % 2) {
+                respond(ex, 503, "busy");
+            } else {
+                respond(ex, 200, body(ex));
+            }
+        });
+        __server.setExecutor(Executors.newCachedThreadPool(Util.newDaemonThreadFactory("HttpConnectionTest")));
+        __server.start();
+        __port = __server.getAddress().getPort();
+    }
+
+    @AfterAll
+    static void stop() {
+        __server.stop(0);
+    }
+
+    @Test
+    void get() throws HttpConnection.Exception {
+        assertEquals("a=1&b=x+y", HttpConnection.get("localhost", __port, "/echo.json", "a=1", "b=x y").get("query"));
+        final Object[] data = (Object[]) HttpConnection.get("localhost", __port, "/list.json").get("data");
+        assertArrayEquals(new Object[]{1, 2, 3}, data);
+        final int[] nvalues = {0};
+        HttpConnection.get("localhost", __port, "/list.json", new JSONStreamReader.Handler() {
+            @Override
+            public void value(Object value) {
+                nvalues[0] += (Integer) value;
+            }
+        });
+        assertEquals(6, nvalues[0]);
+        final HttpConnection.Exception ex = assertThrows(HttpConnection.Exception.class,
+                () -> HttpConnection.get("localhost", __port, "/fail.json"));
+        assertTrue(ex.getMessage().startsWith("500"));
+    }
+
+    @Test
+    void postJSON() throws HttpConnection.Exception {
+        final Map<String, Object> resp = HttpConnection.postJSON("localhost", __port, "/echo.json",
+                "name", "gblibx", "n", 42, "list", List.of(1, "two"));
+        assertEquals("gblibx", resp.get("name"));
+        assertEquals(42, resp.get("n"));
+        assertArrayEquals(new Object[]{1, "two"}, (Object[]) resp.get("list"));
+    }
+
+    @Test
+    void async() {
+        final List<CompletableFuture<Map<String, Object>>> futures = new LinkedList<>();
+        for (int i = 0; i < 200; ++i) {
+            futures.add((0 == i % 2)
+                    ? HttpConnection.getAsync("localhost", __port, "/echo.json", "i=" + i)
+                    : HttpConnection.postJSONAsync("localhost", __port, "/echo.json", toMap("i", i)));
+        }
+        int i = 0;
+        for (CompletableFuture<Map<String, Object>> future : futures) {
+            final Map<String, Object> resp = future.join();
+            assertEquals((0 == i % 2) ? "i=" + i : i, (0 == i % 2) ? resp.get("query") : resp.get("i"));
+            ++i;
+        }
+        final CompletionException ex = assertThrows(CompletionException.class,
+                () -> HttpConnection.getAsync("localhost", __port, "/fail.json").join());
+        assertInstanceOf(HttpConnection.Exception.class, ex.getCause());
+    }
+
+    @Test
+    void retry() throws IOException {
+        final long retries = HttpConnection.getRetryScheduler().getRetries();
+        final List<CompletableFuture<Map<String, Object>>> futures = new LinkedList<>();
+        for (int i = 0; i < 10; ++i) {
+            futures.add(HttpConnection.postJSONRetryAsync("localhost", __port, "/flaky.json", toMap("i", i)));
+        }
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, futures.get(i).join().get("i"));
+        }
+        assertTrue(HttpConnection.getRetryScheduler().getRetries() > retries);
+        //not retryable
+        final CompletionException ex = assertThrows(CompletionException.class,
+                () -> HttpConnection.postJSONRetryAsync("localhost", __port, "/fail.json", toMap()).join());
+        assertEquals(500, ((HttpConnection.Exception) ex.getCause()).code);
+        //legacy (blocking) retries exhausted: last failure thrown
+        final int closed;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closed = socket.getLocalPort();
+        }
+        final HttpConnection.Exception legacy = assertThrows(HttpConnection.Exception.class,
+                () -> HttpConnection.postJSON("localhost", closed, "/none.json", toMap(), http -> {}, 0, 2));
+        assertInstanceOf(IOException.class, legacy.getCause());
+        //budget: 2 retries (no refill), then fail fast
+        final RetryScheduler scheduler = new RetryScheduler(Duration.ofMillis(1), Duration.ofMillis(10),
+                Duration.ofSeconds(10), 2, 0);
+        final AtomicInteger attempts = new AtomicInteger(0);
+        final CompletableFuture<Object> failed = scheduler.submit("key", () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException());
+        }, e -> e instanceof IllegalStateException);
+        assertThrows(CompletionException.class, failed::join);
+        assertEquals(3, attempts.get());
+        assertEquals(2, scheduler.getRetries());
+        assertEquals(1, scheduler.getExhausted());
+    }
+
+    @Test
+    void batch() {
+        final int batches = __batches.get();
+        final BatchingClient client = new BatchingClient(10, Duration.ofMillis(100));
+        final List<CompletableFuture<Object>> futures = new LinkedList<>();
+        for (int i = 0; i < 103; ++i) {
+            futures.add(client.postJSON("localhost", __port, "/batch.json", toMap("i", i)));
+        }
+        for (int i = 0; i < 103; ++i) {
+            assertEquals(2 * i, futures.get(i).join());
+        }
+        //10 full, and 1 (3 items) after delay
+        assertEquals(11, __batches.get() - batches);
+        assertEquals(11, client.getBatches());
+        assertEquals(103, client.getItems());
+    }
+
+    @Test
+    void cache() throws HttpConnection.Exception, IOException {
+        final File dir = Files.createTempDirectory("gblibx").toFile();
+        //stale immediately: always revalidate
+        final HttpGetCache revalidate = new HttpGetCache(1 << 20, Duration.ZERO).setDiskDir(dir);
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(1, revalidate.get("localhost", __port, "/etag.json").get("version"));
+        }
+        assertEquals(3, __etagRequests.get());
+        assertEquals(1, revalidate.getMisses());
+        assertEquals(2, revalidate.getRevalidated());
+        assertEquals(2, revalidate.getHits());
+        //fresh: no requests; from disk tier (as after restart)
+        final HttpGetCache fresh = new HttpGetCache(1 << 20, Duration.ofMinutes(1)).setDiskDir(dir);
+        fresh.get("localhost", __port, "/list.json");
+        for (int i = 0; i < 3; ++i) {
+            assertArrayEquals(new Object[]{1, 2, 3}, (Object[]) fresh.get("localhost", __port, "/list.json").get("data"));
+        }
+        assertEquals(1, fresh.getMisses());
+        assertEquals(3, fresh.getHits());
+        final HttpGetCache restarted = new HttpGetCache(1 << 20, Duration.ofMinutes(1)).setDiskDir(dir);
+        restarted.get("localhost", __port, "/list.json");
+        assertEquals(0, restarted.getMisses());
+        assertEquals(1, restarted.getHits());
+        //bounded
+        final HttpGetCache small = new HttpGetCache(200, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; ++i) {
+            small.get("localhost", __port, "/echo.json", "i=" + i);
+        }
+        assertTrue(small.getBytes() <= 200);
+        assertTrue(0 < small.getEvictions());
+        //corrupt (length beyond end of file): miss, and file replaced
+        for (File f : dir.listFiles()) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.setLength(raf.length() - 1);
+            }
+        }
+        final HttpGetCache corrupt = new HttpGetCache(1 << 20, Duration.ofMinutes(1)).setDiskDir(dir);
+        corrupt.get("localhost", __port, "/list.json");
+        assertEquals(1, corrupt.getMisses());
+        final HttpGetCache reread = new HttpGetCache(1 << 20, Duration.ofMinutes(1)).setDiskDir(dir);
+        reread.get("localhost", __port, "/list.json");
+        assertEquals(0, reread.getMisses());
+        //disk tier bounded
+        final HttpGetCache bounded = new HttpGetCache(1 << 20, Duration.ofMinutes(1)).setDiskDir(dir, 400);
+        for (int i = 0; i < 10; ++i) {
+            bounded.get("localhost", __port, "/echo.json", "i=" + i);
+        }
+        assertTrue(bounded.getDiskBytes() <= 400);
+        assertEquals(bounded.getDiskBytes(), Arrays.stream(dir.listFiles()).mapToLong(File::length).sum());
+        restarted.clear();
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    void gzip() throws IOException, HttpConnection.Exception {
+        final StringBuilder sbuf = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) sbuf.append(i % 7).append(',');
+        final byte[] data = sbuf.toString().getBytes(StandardCharsets.UTF_8);
+        final byte[] gz;
+        try (InputStream is = new GzipCompressingInputStream(new ByteArrayInputStream(data))) {
+            //odd sized reads
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buf = new byte[37];
+            int n;
+            while (0 <= (n = is.read(buf))) bos.write(buf, 0, n);
+            gz = bos.toByteArray();
+        }
+        assertTrue(gz.length < data.length / 10);
+        assertArrayEquals(data, new GZIPInputStream(new ByteArrayInputStream(gz)).readAllBytes());
+        assertArrayEquals(data, HttpConnection.decode(new ByteArrayInputStream(gz), "gzip").readAllBytes());
+        for (boolean nowrap : new boolean[]{false, true}) {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (OutputStream os = new DeflaterOutputStream(bos, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+                os.write(data);
+            }
+            assertArrayEquals(data, HttpConnection.decode(
+                    new ByteArrayInputStream(bos.toByteArray()), "deflate").readAllBytes());
+        }
+        assertEquals("gzip gzip gzip gzip", HttpConnection.get("localhost", __port, "/gzip.json").get("text"));
+        assertEquals("gzip gzip gzip gzip",
+                HttpConnection.postJSON("localhost", __port, "/gzip.json", toMap()).get("text"));
+        assertEquals("gzip gzip gzip gzip",
+                new HttpGetCache(1 << 20, Duration.ZERO).get("localhost", __port, "/gzip.json").get("text"));
+    }
+
+    @Test
+    void gzipRequests() throws HttpConnection.Exception {
+        //per host: other tests use localhost
+        HttpConnection.setGzipRequests("127.0.0.1", __port, true);
+        try {
+            final String text = "gzip ".repeat(HttpConnection.GZIP_THRESHOLD);
+            final Object[] big = new Object[HttpConnection.STREAM_THRESHOLD / 4];
+            for (int i = 0; i < big.length; ++i) big[i] = i;
+            //fixed length, then streamed
+            final List<Map<String, Object>> bodies = List.of(toMap("text", text), toMap("big", big));
+            for (Map<String, Object> vals : bodies) {
+                //HttpClient
+                __encoding.set(null);
+                final Map<String, Object> resp =
+                        HttpConnection.postJSONAsync("127.0.0.1", __port, "/gzipped.json", vals).join();
+                assertEquals("gzip", __encoding.get());
+                assertEquals(new JSONObject(vals).toString(), new JSONObject(resp).toString());
+                //HttpURLConnection
+                __encoding.set(null);
+                final AtomicReference<Map<String, Object>> legacy = new AtomicReference<>();
+                HttpConnection.postJSON("127.0.0.1", __port, "/gzipped.json", vals, http -> {
+                    try {
+                        legacy.set(HttpConnection.getResponse(http));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                assertEquals("gzip", __encoding.get());
+                assertEquals(new JSONObject(vals).toString(), new JSONObject(legacy.get()).toString());
+            }
+            //below threshold, and other host: not compressed
+            HttpConnection.postJSONAsync("127.0.0.1", __port, "/gzipped.json", toMap("text", "gzip")).join();
+            assertNull(__encoding.get());
+            assertEquals(text, HttpConnection.postJSONAsync("localhost", __port, "/gzipped.json",
+                    toMap("text", text)).join().get("text"));
+            assertNull(__encoding.get());
+        } finally {
+            HttpConnection.setGzipRequests("127.0.0.1", __port, false);
+        }
+    }
+
+    @Test
+    void stream() throws HttpConnection.Exception {
+        //larger than STREAM_THRESHOLD: streamed (chunked)
+        final Object[] big = new Object[HttpConnection.STREAM_THRESHOLD / 4];
+        for (int i = 0; i < big.length; ++i) big[i] = i;
+        final Map<String, Object> resp = HttpConnection.postJSON("localhost", __port, "/echo.json", "big", big);
+        assertArrayEquals(big, (Object[]) resp.get("big"));
+        final Map<String, Object> async = HttpConnection.postJSONAsync("localhost", __port, "/batch.json",
+                List.of(toMap("i", 1), toMap("i", 2), toMap("big", big, "i", 3))).join();
+        assertArrayEquals(new Object[]{2, 4, 6}, (Object[]) async.get("data"));
+    }
+
+    @Test
+    void streamAbort() {
+        //fails (after STREAM_THRESHOLD) as serialized
+        final List<Object> bad = new AbstractList<>() {
+            @Override
+            public Object get(int index) {
+                if (index == size() - 1) throw new IllegalStateException("bad item");
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return HttpConnection.STREAM_THRESHOLD / 4;
+            }
+        };
+        final CompletionException async = assertThrows(CompletionException.class,
+                () -> HttpConnection.postJSONAsync("localhost", __port, "/sink.json", toMap("bad", bad)).join());
+        assertTrue(async.getCause() instanceof HttpConnection.Exception);
+        assertTrue(async.getCause().getCause() instanceof IllegalStateException);
+        final HttpConnection.Exception legacy = assertThrows(HttpConnection.Exception.class,
+                () -> HttpConnection.postJSON("localhost", __port, "/sink.json", toMap("bad", bad),
+                        http -> fail("no response expected")));
+        assertTrue(legacy.getCause() instanceof IllegalStateException);
+        assertEquals(0, __received.get());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static gblibx.Util.castobj;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JSONStreamReaderTest {
+    private static final String JSON = "{\"s\": \"a\\\"b\\u00e9\\n\", \"i\": 42, \"l\": 2147483648, \"d\": -1.5e2,"
+            + " \"t\": true, \"n\": null, \"big\": 99999999999999999999, unquoted: hello world,"
+            + " 'single': 'q', \"a\": [1, [], {}, {\"x\": [null]}], \"o\": {\"k\": \"€\"}}";
+
+    @Test
+    void read() throws IOException {
+        final Map<String, Object> map = castobj(new JSONStreamReader(
+                new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8))).read());
+        //same as (previous) JSONObject then Util.toMap
+        final Map<String, Object> expect = Util.toMap(new JSONObject(JSON));
+        assertTrue(new JSONObject(expect).similar(new JSONObject(map)));
+        assertEquals(expect.keySet(), map.keySet());
+        for (String k : expect.keySet()) {
+            assertEquals(expect.get(k).getClass(), map.get(k).getClass(), k);
+        }
+        assertEquals("a\"bé\n", map.get("s"));
+        assertEquals("hello world", map.get("unquoted"));
+        assertSame(JSONObject.NULL, map.get("n"));
+        final Object[] a = castobj(map.get("a"));
+        assertEquals(0, ((Object[]) a[1]).length);
+        assertTrue(((Map<?, ?>) a[2]).isEmpty());
+        assertEquals("€", ((Map<?, ?>) map.get("o")).get("k"));
+    }
+
+    @Test
+    void events() throws IOException {
+        final int[] counts = new int[3];
+        final JSONStreamReader reader = new JSONStreamReader(new StringReader(JSON + " [1, 2] 3"));
+        final JSONStreamReader.Handler handler = new JSONStreamReader.Handler() {
+            @Override
+            public void startObject() {
+                ++counts[0];
+            }
+
+            @Override
+            public void startArray() {
+                ++counts[1];
+            }
+
+            @Override
+            public void value(Object value) {
+                ++counts[2];
+            }
+        };
+        assertTrue(reader.parse(handler));
+        assertArrayEquals(new int[]{4, 3, 12}, counts);
+        assertArrayEquals(new Object[]{1, 2}, (Object[]) reader.read());
+        assertEquals(3, reader.read());
+        assertNull(reader.read());
+        assertThrows(IOException.class, () -> new JSONStreamReader(new StringReader("{\"a\": [1, 2}")).read());
+        assertThrows(IOException.class, () -> new JSONStreamReader(new StringReader("{\"a\": \"x")).read());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gblibx.Util.toMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JSONStreamWriterTest {
+    private static String write(Object value) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new JSONStreamWriter(bos).write(value);
+        return bos.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void write() throws IOException {
+        final String tricky = "a\"b\\c</d>\t\n\u0001\u0085 é€";
+        assertEquals(JSONObject.quote(tricky), write(tricky));
+        for (Number n : new Number[]{1, -2L, 1.0, 1.5, 1e300, 0.1f}) {
+            assertEquals(JSONObject.numberToString(n), write(n));
+        }
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("s", tricky);
+        map.put("n", 42);
+        map.put("skipped", null);
+        map.put("null", JSONObject.NULL);
+        map.put("list", List.of(1, "two", List.of()));
+        map.put("array", new int[]{1, 2});
+        map.put("objs", new Object[]{toMap("k", true), JSONObject.NULL});
+        final String json = write(map);
+        assertTrue(new JSONObject(map).similar(new JSONObject(json)));
+        assertFalse(json.contains("skipped"));
+        assertEquals("[\"eNormal\"]", write(List.of(RunCmd.ExitType.eNormal)));
+        assertEquals("[1,\"x\",null]", write(new JSONArray("[1, \"x\", null]")));
+    }
+
+    @Test
+    void toBytes() throws IOException {
+        assertArrayEquals("[1,2,3]".getBytes(StandardCharsets.UTF_8), JSONStreamWriter.toBytes(List.of(1, 2, 3), 7));
+        assertNull(JSONStreamWriter.toBytes(List.of(1, 2, 3), 6));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobServerTest {
+
+    private static Thread start(JobWorker worker) {
+        final Thread thread = new Thread(() -> {
+            try {
+                worker.run();
+            } catch (HttpConnection.Exception e) {
+                ;
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void run() throws IOException, InterruptedException {
+        final JobServer server = new JobServer(0).start();
+        final List<CompletableFuture<JobServer.Result>> results = new LinkedList<>();
+        for (int i = 0; i < 10; ++i) {
+            results.add(server.submit("/bin/sh", "-c", String.format("echo %d; exit %d", i, i % 2)));
+        }
+        final JobWorker w1 = new JobWorker("localhost", server.getPort(), 2);
+        final JobWorker w2 = new JobWorker("localhost", server.getPort(), 3);
+        start(w1);
+        start(w2);
+        int i = 0;
+        for (CompletableFuture<JobServer.Result> future : results) {
+            final JobServer.Result result = future.join();
+            assertEquals(String.format("%d\n", i), result.cout);
+            assertEquals(i % 2, result.exitValue);
+            assertEquals(i % 2 == 0, result.isSuccess());
+            assertEquals(1, result.attempts);
+            ++i;
+        }
+        assertEquals(10, server.getCounts().get(JobServer.State.eDone));
+        assertEquals(10, w1.getCompleted() + w2.getCompleted());
+        w1.stop();
+        w2.stop();
+        server.stop();
+    }
+
+    @Test
+    void requeue() throws IOException, InterruptedException {
+        final JobServer server = new JobServer(0)
+                .setWorkerTimeout(Duration.ofMillis(1000))
+                .start();
+        final CompletableFuture<JobServer.Result> f1 = server.submit("/bin/sh", "-c", "sleep 0.5; echo one");
+        final CompletableFuture<JobServer.Result> f2 = server.submit("/bin/sh", "-c", "sleep 0.5; echo two");
+        final JobWorker dies = new JobWorker("localhost", server.getPort(), 2)
+                .setHeartbeat(Duration.ofMillis(200));
+        start(dies);
+        while (2 != server.getCounts().get(JobServer.State.eLeased)) Thread.sleep(10);
+        dies.kill();
+        final JobWorker lives = new JobWorker("localhost", server.getPort(), 2)
+                .setHeartbeat(Duration.ofMillis(200));
+        start(lives);
+        for (CompletableFuture<JobServer.Result> future : List.of(f1, f2)) {
+            final JobServer.Result result = future.join();
+            assertTrue(result.isSuccess());
+            assertEquals(2, result.attempts);
+            assertEquals(lives.getId(), result.worker);
+        }
+        assertEquals("one\n", f1.join().cout);
+        assertEquals(0, dies.getCompleted());
+        assertFalse(server.getWorkers().containsKey(dies.getId()));
+        lives.stop();
+        server.stop();
+    }
+
+    @Test
+    void token() throws IOException {
+        //non-loopback needs token
+        assertThrows(RuntimeException.class, () -> new JobServer(new InetSocketAddress("0.0.0.0", 0), null));
+        final JobServer server = new JobServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "secret")
+                .start();
+        final JobWorker bad = new JobWorker("localhost", server.getPort(), 1).setToken("wrong");
+        assertThrows(HttpConnection.Exception.class, bad::run);
+        final CompletableFuture<JobServer.Result> result = server.submit("echo", "ok");
+        final JobWorker good = new JobWorker("localhost", server.getPort(), 1).setToken("secret");
+        start(good);
+        assertEquals("ok\n", result.join().cout);
+        good.stop();
+        server.stop();
+    }
+
+    @Test
+    void unauthenticated() throws IOException {
+        //default server requires (default) token
+        final JobServer server = new JobServer(0).start();
+        final HttpConnection.Exception ex = assertThrows(HttpConnection.Exception.class,
+                () -> HttpConnection.postJSON("localhost", server.getPort(), "/submit.json",
+                        "cmd", new String[]{"echo", "oops"}));
+        assertTrue(ex.getMessage().contains("403"), ex.getMessage());
+        assertEquals(0, server.getCounts().get(JobServer.State.eQueued));
+        assertNotNull(JobServer.getToken());
+        if (null == JobServer.TOKEN) {
+            assertEquals("rw-------", PosixFilePermissions.toString(
+                    Files.getPosixFilePermissions(Paths.get(JobServer.TOKEN_FILE))));
+        }
+        server.stop();
+    }
+}
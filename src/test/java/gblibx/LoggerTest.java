@@ -0,0 +1,63 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggerTest {
+    @Test
+    void includeCaller() {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final PrintStream was = System.out;
+        final ConsoleLogger.Impl logger;
+        System.setOut(new PrintStream(bos, true, StandardCharsets.UTF_8));
+        try {
+            logger = new ConsoleLogger.Impl(false);
+        } finally {
+            System.setOut(was);
+        }
+        logger.info("without caller");
+        assertFalse(logger.setIncludeCaller(true));
+        final int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        logger.info("with caller");
+        assertTrue(logger.setIncludeCaller(false));
+        logger.info("without caller again");
+        final String[] lines = bos.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].endsWith(": without caller"));
+        assertFalse(lines[0].contains("LoggerTest"));
+        assertTrue(lines[1].endsWith(": LoggerTest.includeCaller:" + line + ": with caller"), lines[1]);
+        assertFalse(lines[2].contains("LoggerTest"));
+    }
+}
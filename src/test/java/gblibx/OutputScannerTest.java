@@ -0,0 +1,91 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputScannerTest {
+
+    @Test
+    void scan() {
+        final List<String> matches = new LinkedList<>();
+        final OutputScanner scanner = new OutputScanner()
+                .addLiteral("error", "Error:", m -> matches.add(m.toString()))
+                .addLiteral("warning", "Warning:", m -> matches.add(m.toString()))
+                .addLiteral("ror", "ror", null)
+                .addRegex("progress", "(\\d+)%", m -> matches.add(m.toString()))
+                .addRegex("file", "\\w+\\.(c|h)\\b", m -> matches.add(m.toString()));
+        final byte[] text = ("start 10%\n"
+                + "Warning: foo.c unused\r\n"
+                + "  Error: bar.h missing; Error: again\n"
+                + "done 100%").getBytes(StandardCharsets.UTF_8);
+        //feed in small chunks to cross chunk boundaries
+        for (int i = 0; i < text.length; i += 3) {
+            scanner.accept(ByteBuffer.wrap(text, i, Math.min(3, text.length - i)));
+        }
+        scanner.close();
+        assertEquals(List.of(
+                "progress:1:7: 10%",
+                "warning:2:1: Warning:",
+                "file:2:10: foo.c",
+                "error:3:3: Error:",
+                "file:3:10: bar.h",
+                "error:3:25: Error:",
+                "progress:4:6: 100%"
+        ), matches);
+        final Map<String, Long> counts = scanner.getCounts();
+        assertEquals(2, counts.get("error"));
+        assertEquals(2, counts.get("ror"));
+        assertEquals(1, counts.get("warning"));
+        assertEquals(2, counts.get("progress"));
+        assertEquals(4, scanner.getLineCount());
+    }
+
+    @Test
+    void runCmd() {
+        final OutputScanner scanner = new OutputScanner()
+                .addLiteral("he", "he", null)
+                .addLiteral("she", "she", null)
+                .addLiteral("hers", "hers", null);
+        new RunCmd("/bin/sh", "-c", "echo ushers; echo she")
+                .setCoutBytes(scanner)
+                .run();
+        final Map<String, Long> counts = scanner.getCounts();
+        assertEquals(2, counts.get("he"));
+        assertEquals(2, counts.get("she"));
+        assertEquals(1, counts.get("hers"));
+    }
+}
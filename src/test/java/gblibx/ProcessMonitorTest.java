@@ -0,0 +1,72 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessMonitorTest {
+
+    @Test
+    void launch() throws Exception {
+        final ProcessMonitor monitor = new ProcessMonitor(Duration.ofMillis(50));
+        final List<ProcessMonitor.Handle> exited = new CopyOnWriteArrayList<>();
+        monitor.addExitListener(exited::add);
+        final ProcessMonitor.Handle ok = monitor.launch("/bin/sh", "-c", "exit 3");
+        final ProcessMonitor.Handle slow = monitor.launch("sleep", "30");
+        assertEquals(2, monitor.getLaunchedCount());
+        assertTrue(monitor.get(slow.getPid()).isPresent());
+        assertSame(ok, ok.onExit().get());
+        assertEquals(3, ok.getExitValue().get());
+        assertFalse(ok.isAlive());
+        assertTrue(ok.getExitedAt().isPresent());
+        slow.destroy();
+        slow.onExit().get();
+        assertEquals(2, monitor.getExitedCount());
+        assertEquals(0, monitor.getLiveCount());
+        assertEquals(2, exited.size());
+        assertTrue(exited.contains(ok) && exited.contains(slow));
+    }
+
+    @Test
+    void cpu() throws Exception {
+        final ProcessMonitor monitor = new ProcessMonitor(Duration.ofMillis(20));
+        //busy for a while (no getCpu() calls while alive: only periodic samples)
+        final ProcessMonitor.Handle busy = monitor.launch("/bin/sh", "-c",
+                "i=0; while [ $i -lt 200000 ]; do i=$((i+1)); done");
+        busy.onExit().get();
+        final Duration cpu = busy.getCpu().get();
+        assertTrue(0 < cpu.toMillis(), cpu.toString());
+        monitor.close();
+    }
+}
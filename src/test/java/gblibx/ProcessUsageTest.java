@@ -0,0 +1,73 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessUsageTest {
+
+    @Test
+    void usage() {
+        ProcessUsage.resetStatistics();
+        final RunCmd rcmd = new RunCmd("/bin/sh", "-c", "echo hello; echo oops >&2")
+                .setSampleInterval(Duration.ofMillis(20));
+        rcmd.run();
+        final ProcessUsage usage = rcmd.getUsage();
+        assertEquals(6, usage.getStdoutBytes());
+        assertEquals(5, usage.getStderrBytes());
+        assertTrue(0 < usage.getWall().toNanos());
+        final ProcessUsage.Aggregate sh = ProcessUsage.getStatistics().get("sh");
+        assertEquals(1, sh.count);
+        assertEquals(6, sh.stdoutBytes);
+    }
+
+    @Test
+    void cpuAfterEof() {
+        //closes stdout, then is busy: cpu after EOF must still be counted
+        final RunCmd rcmd = new RunCmd("/bin/sh", "-c",
+                "exec >&-; i=0; while [ $i -lt 300000 ]; do i=$((i+1)); done")
+                .setSampleInterval(Duration.ofMillis(1000));
+        rcmd.run();
+        final Duration cpu = rcmd.getUsage().getCpu();
+        assertTrue(100 < cpu.toMillis(), cpu.toString());
+        //sampled by default
+        final RunCmd dflt = new RunCmd("/bin/sh", "-c", "i=0; while [ $i -lt 100000 ]; do i=$((i+1)); done");
+        dflt.run();
+        assertTrue(0 < dflt.getUsage().getCpu().toNanos(), dflt.getUsage().toString());
+        assertTrue(0 < dflt.getUsage().getPeakRss(), dflt.getUsage().toString());
+        //not sampled if disabled
+        final RunCmd off = new RunCmd("/bin/sh", "-c", "i=0; while [ $i -lt 100000 ]; do i=$((i+1)); done")
+                .setSampleInterval(null);
+        off.run();
+        assertEquals(Duration.ZERO, off.getUsage().getCpu());
+    }
+}
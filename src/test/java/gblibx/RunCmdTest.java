@@ -0,0 +1,222 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunCmdTest {
+
+    @Test
+    void run() {
+        assertEquals("hello world", RunCmd.runCommandStdout("echo hello world"));
+        final RunCmd rcmd = new RunCmd("/bin/sh", "-c", "exit 3");
+        rcmd.run();
+        assertTrue(rcmd.isNormalExit());
+        assertEquals(3, rcmd.getExitValue());
+        final RunCmd bogus = new RunCmd("flobber command");
+        bogus.run();
+        assertEquals(RunCmd.ExitType.eException, bogus.getExitType());
+    }
+
+    @Test
+    void start() {
+        final List<CompletableFuture<Integer>> futures = new LinkedList<>();
+        for (int i = 0; i < 32; ++i) {
+            futures.add(new RunCmd(s -> {
+            }, "/bin/sh", "-c", String.format("echo %d; exit %d", i, i % 4)).start());
+        }
+        int i = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(i++ % 4, future.join());
+        }
+    }
+
+    @Test
+    void batch() {
+        final List<Integer> order = new LinkedList<>();
+        final RunCmdBatch batch = new RunCmdBatch(1)
+                .setOnResult(r -> order.add(r.priority));
+        for (int i = 0; i < 10; ++i) {
+            batch.add(new RunCmd(s -> {
+            }, "/bin/sh", "-c", String.format("exit %d", i % 2)), i);
+        }
+        final RunCmdBatch.Summary summary = batch.run();
+        assertEquals(10, summary.completed);
+        assertEquals(5, summary.succeeded);
+        assertEquals(5, summary.failed);
+        assertEquals(5, summary.exitValues.get(1));
+        assertEquals(List.of(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), order);
+        //fail fast
+        final RunCmdBatch failFast = new RunCmdBatch(2, RunCmdBatch.Mode.eFailFast);
+        failFast.add(new RunCmd("/bin/sh", "-c", "exit 1"), 1);
+        for (int i = 0; i < 10; ++i) {
+            failFast.add(new RunCmd("/bin/sleep", "0.2"));
+        }
+        final RunCmdBatch.Summary ffs = failFast.run();
+        assertEquals(11, ffs.completed);
+        assertTrue(0 < ffs.cancelled);
+    }
+
+    @Test
+    void timeout() {
+        final long started = System.nanoTime();
+        //background sleep holds stdout open: needs tree termination
+        final RunCmd wall = new RunCmd("/bin/sh", "-c", "sleep 30 & wait")
+                .setTimeout(Duration.ofMillis(500));
+        final RunCmd idle = new RunCmd("/bin/sh", "-c", "echo started; sleep 30")
+                .setIdleTimeout(Duration.ofMillis(500));
+        //root exits before timeout, orphaned sleep still holds stdout open
+        final RunCmd orphan = new RunCmd("/bin/sh", "-c", "sleep 30 & sleep 1; exit 0")
+                .setTimeout(Duration.ofMillis(1500));
+        final RunCmd ok = new RunCmd("/bin/sh", "-c", "echo done")
+                .setTimeout(Duration.ofSeconds(30))
+                .setIdleTimeout(Duration.ofSeconds(30));
+        CompletableFuture.allOf(wall.start(), idle.start(), orphan.start(), ok.start()).join();
+        assertEquals(RunCmd.ExitType.eTimeout, wall.getExitType());
+        assertEquals(RunCmd.ExitType.eTimeout, idle.getExitType());
+        assertEquals(RunCmd.ExitType.eTimeout, orphan.getExitType());
+        assertTrue(ok.isNormalExit());
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).getSeconds() < 10);
+    }
+
+    @Test
+    void bytes() throws IOException {
+        final long[] count = {0};
+        final RunCmd rcmd = new RunCmd("head -c 1000000 /dev/zero")
+                .setCoutBytes(buf -> count[0] += buf.remaining());
+        rcmd.run();
+        assertEquals(1000000, count[0]);
+        final File out = File.createTempFile("gblibx", ".out");
+        out.deleteOnExit();
+        new RunCmd("/bin/sh", "-c", "echo to file; echo err >&2")
+                .redirectCout(out, false)
+                .mergeCerr()
+                .run();
+        assertEquals("to file\nerr\n", Util.readFile(out.getPath()));
+        final long[] teed = {0};
+        new RunCmd("echo tee")
+                .setCoutBytes(new RunCmd.Tee(out, true, buf -> teed[0] += buf.remaining()))
+                .run();
+        assertEquals(4, teed[0]);
+        assertEquals("to file\nerr\ntee\n", Util.readFile(out.getPath()));
+        //consumer is set once
+        final RunCmd twice = new RunCmd("echo").setCoutBytes(buf -> {});
+        assertThrows(RuntimeException.class, () -> twice.setCoutBytes(buf -> {}));
+    }
+
+    @Test
+    void stdin() throws IOException {
+        final int[] remaining = {100};
+        final ByteBuffer chunk = ByteBuffer.allocate(10000);
+        final long[] count = {0};
+        new RunCmd("wc -c")
+                .setStdin(() -> (0 < remaining[0]--) ? chunk.clear() : null)
+                .setCoutBytes(buf -> count[0] = Long.parseLong(StandardCharsets.UTF_8.decode(buf).toString().trim()))
+                .run();
+        assertEquals(1000000, count[0]);
+        final List<String> lines = new LinkedList<>();
+        final RunCmd rcmd = new RunCmd(lines::add, "cat")
+                .setStdin(new ByteArrayInputStream("hello\nworld\n".getBytes()));
+        rcmd.run();
+        assertEquals(0, rcmd.getExitValue());
+        assertEquals(List.of("hello", "world"), lines);
+        //process exits before consuming all input
+        final boolean[] closed = {false};
+        final RunCmd early = new RunCmd("true").setStdin(() -> chunk.clear(), () -> closed[0] = true);
+        early.run();
+        assertEquals(0, early.getExitValue());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    void cache() throws IOException {
+        final File dir = Files.createTempDirectory("gblibx").toFile();
+        final File input = new File(dir, "input.txt");
+        Files.writeString(input.toPath(), "abc");
+        final RunCmdCache cache = new RunCmdCache(new File(dir, "cache"), 1 << 20);
+        final RunCmdCache.Request request = new RunCmdCache.Request("cat", input.getPath())
+                .inputs(input)
+                .fingerprint(RunCmdCache.Fingerprint.eContent);
+        final RunCmdCache.Result miss = cache.run(request);
+        assertFalse(miss.cached);
+        assertEquals("abc", miss.getStdout());
+        final RunCmdCache.Result hit = cache.run(request);
+        assertTrue(hit.cached);
+        assertEquals("abc", hit.getStdout());
+        Files.writeString(input.toPath(), "xyz");
+        final RunCmdCache.Result changed = cache.run(request);
+        assertFalse(changed.cached);
+        assertEquals("xyz", changed.getStdout());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        //reopened store is indexed (same size, and still hits)
+        final RunCmdCache reopened = new RunCmdCache(new File(dir, "cache"), 1 << 20);
+        assertEquals(cache.getSize(), reopened.getSize());
+        assertTrue(reopened.run(request).cached);
+        //evicted down to max size
+        final RunCmdCache small = new RunCmdCache(new File(dir, "cache"), 1);
+        assertEquals(0, small.getSize());
+        assertFalse(small.run(request).cached);
+        Util.rmRfDirectory(dir);
+    }
+
+    @Test
+    void pipeline() {
+        final List<String> cout = new LinkedList<>();
+        final RunCmdPipeline pipeline = new RunCmdPipeline(cout::add, System.err::println)
+                .add("seq 1 1000")
+                .add("grep", "7")
+                .add("wc -l");
+        pipeline.run();
+        assertTrue(pipeline.isSuccess());
+        assertEquals(List.of("271"), cout);
+        assertEquals(3, pipeline.getStages().size());
+        assertThrows(RuntimeException.class, pipeline::start);
+        final RunCmdPipeline fail = new RunCmdPipeline(s -> {
+        }, s -> {
+        })
+                .add("/bin/sh", "-c", "exit 2")
+                .add("cat");
+        fail.run();
+        assertEquals(List.of(2, 0), fail.getExitValues());
+        assertFalse(fail.isSuccess());
+    }
+}
@@ -29,6 +29,11 @@ package gblibx;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class RunCshCmdTest {
@@ -42,4 +47,43 @@ class RunCshCmdTest {
         assertTrue(RunCshCmd.run("printenv; source ~/.cshrc; printenv"));
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void session() throws Exception {
+        //sh, since csh is not always installed
+        try (CshSession.Pool pool = new CshSession.Pool(2, false, "/bin/sh", "$?")) {
+            final List<String> cout = new LinkedList<>(), cerr = new LinkedList<>();
+            assertTrue(pool.run("X=123; cd /tmp", cout::add, cerr::add).isSuccess());
+            assertTrue(pool.run("echo $X; pwd; echo oops >&2", cout::add, cerr::add).isSuccess());
+            assertEquals(List.of("123", "/tmp"), cout);
+            assertEquals(List.of("oops"), cerr);
+            final CshSession.Result rc = pool.run("printf partial; false", cout::add, cerr::add);
+            assertEquals(1, rc.exitValue);
+            assertEquals("partial", cout.get(2));
+            //shell dies, but is restarted
+            assertFalse(pool.run("exit 3", cout::add, cerr::add).completed);
+            assertTrue(pool.run("true", cout::add, cerr::add).isSuccess());
+            //killed at deadline, and restarted
+            pool.setTimeout(Duration.ofMillis(300));
+            final CshSession.Result slow = pool.run("sleep 30", cout::add, cerr::add);
+            assertTrue(slow.timedOut);
+            assertFalse(slow.completed);
+            assertTrue(pool.run("true", cout::add, cerr::add).isSuccess());
+            //unclosed quote: waits for more input (until deadline)
+            assertTrue(pool.run("echo 'unclosed", cout::add, cerr::add).timedOut);
+            assertTrue(pool.run("true", cout::add, cerr::add).isSuccess());
+            //close kills borrowed sessions
+            pool.setTimeout(null);
+            final CshSession borrowed = pool.borrow();
+            final long started = System.nanoTime();
+            final CompletableFuture<CshSession.Result> running = CompletableFuture.supplyAsync(
+                    () -> borrowed.run("sleep 30", cout::add, cerr::add));
+            Thread.sleep(300);
+            pool.close();
+            assertFalse(running.get().completed);
+            assertTrue(Duration.ofNanos(System.nanoTime() - started).getSeconds() < 10);
+            pool.release(borrowed);
+            assertFalse(borrowed.isAlive());
+        }
+    }
+}
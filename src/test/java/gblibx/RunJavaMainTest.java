@@ -0,0 +1,147 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunJavaMainTest {
+    public static class Main {
+        public static void main(String[] argv) throws InterruptedException {
+            ++__count;
+            System.out.printf("%s count=%d\n", argv[0], __count);
+            final Thread child = new Thread(() -> System.err.println(argv[0] + " child"));
+            child.start();
+            child.join();
+            if (1 < argv.length) {
+                if (argv[1].equals("throw")) throw new IllegalStateException(argv[0]);
+                System.exit(Integer.parseInt(argv[1]));
+            }
+        }
+
+        private static int __count = 0;
+    }
+
+    public static class ExitInInit {
+        static {
+            System.exit(7);
+        }
+
+        public static void main(String[] argv) {
+        }
+    }
+
+    /**
+     * Starts pool thread (during invocation): shared via system properties,
+     * since each invocation has its own class loader.
+     */
+    public static class Pooled {
+        public static void main(String[] argv) throws Exception {
+            final ExecutorService pool = Executors.newSingleThreadExecutor();
+            System.getProperties().put(POOL_KEY, pool);
+            pool.submit(() -> System.out.println("during")).get();
+        }
+    }
+
+    private static final String POOL_KEY = "gblibx.RunJavaMainTest.pool";
+
+    /**
+     * Do not leave System.out/err and exit trap replaced for other tests (of same jvm).
+     */
+    @AfterAll
+    @SuppressWarnings("removal")
+    static void uninstall() {
+        RunJavaMain.uninstall();
+        assertNull(System.getSecurityManager());
+        assertFalse(RunJavaMain.isExitTrapped());
+    }
+
+    @Test
+    void run() {
+        final String main = Main.class.getName();
+        final List<RunJavaMain> runs = new LinkedList<>();
+        final List<List<String>> outs = new LinkedList<>();
+        final List<CompletableFuture<Integer>> futures = new LinkedList<>();
+        //else System.exit would exit test jvm
+        final boolean trapped = RunJavaMain.trapExit();
+        if (!trapped) {
+            assertThrows(RuntimeException.class, () -> new RunJavaMain(main, "exits", "1").start());
+        }
+        for (int i = 0; i < 8; ++i) {
+            final List<String> out = new LinkedList<>();
+            final String[] args = (0 == i % 2) || !trapped
+                    ? new String[]{"run" + i}
+                    : new String[]{"run" + i, Integer.toString(i)};
+            final RunJavaMain run = new RunJavaMain(main, args, out::add, out::add)
+                    .setExitTrapRequired(trapped);
+            runs.add(run);
+            outs.add(out);
+            futures.add(run.start());
+        }
+        System.out.println("not captured");
+        for (int i = 0; i < 8; ++i) {
+            final int exitValue = futures.get(i).join();
+            //each invocation has own (static) state and own output
+            assertEquals(List.of("run" + i + " count=1", "run" + i + " child"), outs.get(i));
+            assertTrue(runs.get(i).isNormalExit());
+            assertEquals((0 == i % 2) || !trapped ? 0 : i, exitValue);
+        }
+        final RunJavaMain bad = new RunJavaMain(main, new String[]{"bad", "throw"}, s -> {}, s -> {});
+        bad.run();
+        assertEquals(RunCmd.ExitType.eException, bad.getExitType());
+        assertInstanceOf(IllegalStateException.class, bad.getException());
+        final RunJavaMain missing = new RunJavaMain("gblibx.NoSuchMain");
+        missing.run();
+        assertInstanceOf(ClassNotFoundException.class, missing.getException());
+        if (trapped) {
+            final RunJavaMain init = new RunJavaMain(ExitInInit.class.getName(), new String[0], s -> {}, s -> {});
+            init.run();
+            assertTrue(init.isNormalExit());
+            assertEquals(7, init.getExitValue());
+        }
+    }
+
+    @Test
+    void pooled() throws Exception {
+        final List<String> out = new LinkedList<>();
+        new RunJavaMain(Pooled.class.getName(), new String[0], out::add, out::add).run();
+        final ExecutorService pool = (ExecutorService) System.getProperties().remove(POOL_KEY);
+        //pool thread outlives invocation: no longer redirected
+        pool.submit(() -> System.out.println("after")).get();
+        pool.shutdown();
+        assertEquals(List.of("during"), out);
+    }
+}
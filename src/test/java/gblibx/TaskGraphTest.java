@@ -0,0 +1,176 @@
+/*
+ *
+ *  * The MIT License
+ *  *
+ *  * Copyright 2006 - 2020 kpfalzer.
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ *
+ */
+
+package gblibx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskGraphTest {
+
+    @Test
+    void run() throws IOException, InterruptedException {
+        final File dir = Files.createTempDirectory("gblibx").toFile();
+        final File src = new File(dir, "src.txt"), mid = new File(dir, "mid.txt"), out = new File(dir, "out.txt");
+        Files.writeString(src.toPath(), "Hello");
+        final AtomicInteger nmid = new AtomicInteger(), nout = new AtomicInteger();
+        //mid: upcased src, but only 1st char (so some changes to src do not change mid).
+        final File stamps = new File(dir, "stamps.json");
+        final TaskGraph graph = new TaskGraph().setStampFile(stamps);
+        final TaskGraph.Node nodeMid = graph.add(mid.getPath(), () -> {
+            nmid.incrementAndGet();
+            Files.writeString(mid.toPath(), Files.readString(src.toPath()).substring(0, 1).toUpperCase());
+            return true;
+        }).dependsOn(src);
+        final TaskGraph.Node nodeOut = graph.add(out.getPath(), () -> {
+            nout.incrementAndGet();
+            Files.writeString(out.toPath(), Files.readString(mid.toPath()) + "!");
+            return true;
+        }).dependsOn(nodeMid);
+        final TaskGraph.Node failing = graph.add(null, () -> false);
+        final TaskGraph.Node skipped = graph.add(null, () -> true).dependsOn(failing, nodeOut);
+        Map<TaskGraph.State, Integer> counts = graph.run(4);
+        assertEquals(2, counts.get(TaskGraph.State.eBuilt));
+        assertEquals(TaskGraph.State.eFailed, failing.getState());
+        assertEquals(TaskGraph.State.eSkipped, skipped.getState());
+        assertEquals("H!", Files.readString(out.toPath()));
+        //nothing to do
+        graph.run(4);
+        assertEquals(TaskGraph.State.eUpToDate, nodeMid.getState());
+        assertEquals(TaskGraph.State.eUpToDate, nodeOut.getState());
+        //change src, but mid is same: early cutoff
+        Files.writeString(src.toPath(), "hi");
+        Files.setLastModifiedTime(src.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        graph.run(4);
+        assertEquals(TaskGraph.State.eUnchanged, nodeMid.getState());
+        assertEquals(TaskGraph.State.eUpToDate, nodeOut.getState());
+        assertEquals(2, nmid.get());
+        assertEquals(1, nout.get());
+        //after early cutoff, nothing to do (src still newer than mid, but stamps match)
+        graph.run(4);
+        assertEquals(TaskGraph.State.eUpToDate, nodeMid.getState());
+        assertEquals(TaskGraph.State.eUpToDate, nodeOut.getState());
+        assertEquals(2, nmid.get());
+        assertEquals(1, nout.get());
+        //stamps persist (to new graph)
+        final TaskGraph again = new TaskGraph().setStampFile(stamps);
+        final TaskGraph.Node againMid = again.add(mid.getPath(), () -> {
+            nmid.incrementAndGet();
+            return true;
+        }).dependsOn(src);
+        again.run(1);
+        assertEquals(TaskGraph.State.eUpToDate, againMid.getState());
+        assertEquals(2, nmid.get());
+        //Error in action: node fails (and run does not hang)
+        final TaskGraph error = new TaskGraph();
+        final TaskGraph.Node throwing = error.add(null, () -> {
+            throw new AssertionError("oops");
+        });
+        error.run(1);
+        assertEquals(TaskGraph.State.eFailed, throwing.getState());
+        //cycle
+        final TaskGraph cyclic = new TaskGraph();
+        final TaskGraph.Node a = cyclic.add(null, () -> true);
+        a.dependsOn(cyclic.add(null, () -> true).dependsOn(a));
+        assertThrows(RuntimeException.class, () -> cyclic.run(1));
+        Util.rmRfDirectory(dir);
+    }
+
+    @Test
+    void failure() throws InterruptedException {
+        //long chain below failed root: all skipped (no stack overflow)
+        final TaskGraph graph = new TaskGraph();
+        final AtomicInteger ran = new AtomicInteger();
+        final TaskGraph.Node root = graph.add(null, () -> {
+            throw new IOException("oops");
+        });
+        TaskGraph.Node prev = root;
+        for (int i = 0; i < 100000; ++i) {
+            prev = graph.add(null, () -> ran.incrementAndGet() > 0).dependsOn(prev);
+        }
+        //independent of failure
+        final TaskGraph.Node other = graph.add(null, () -> ran.incrementAndGet() > 0);
+        final Map<TaskGraph.State, Integer> counts = graph.run(4);
+        assertEquals(TaskGraph.State.eFailed, root.getState());
+        assertTrue(root.getException() instanceof IOException);
+        assertEquals(100000, counts.get(TaskGraph.State.eSkipped));
+        assertEquals(TaskGraph.State.eSkipped, prev.getState());
+        assertEquals(TaskGraph.State.eBuilt, other.getState());
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void cutoff() throws IOException, InterruptedException {
+        final File dir = Files.createTempDirectory("gblibx").toFile();
+        final File src = new File(dir, "src.txt"), mid = new File(dir, "mid.txt"), out = new File(dir, "out.txt");
+        Files.writeString(src.toPath(), "Hello");
+        final AtomicInteger nmid = new AtomicInteger(), nout = new AtomicInteger();
+        final Supplier<TaskGraph> newGraph = () -> {
+            final TaskGraph graph = new TaskGraph();
+            final TaskGraph.Node nodeMid = graph.add(mid.getPath(), () -> {
+                nmid.incrementAndGet();
+                Files.writeString(mid.toPath(), Files.readString(src.toPath()).substring(0, 1).toUpperCase());
+                return true;
+            }).dependsOn(src);
+            graph.add(out.getPath(), () -> {
+                nout.incrementAndGet();
+                Files.writeString(out.toPath(), Files.readString(mid.toPath()) + "!");
+                return true;
+            }).dependsOn(nodeMid);
+            return graph;
+        };
+        newGraph.get().run(2);
+        //same content: cutoff stops at mid
+        Files.writeString(src.toPath(), "hi");
+        Files.setLastModifiedTime(src.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        final TaskGraph graph = newGraph.get();
+        graph.run(2);
+        assertEquals(TaskGraph.State.eUnchanged, graph.getNodes().get(0).getState());
+        assertEquals(2, nmid.get());
+        assertEquals(1, nout.get());
+        //without stamp file, new graph rebuilds mid (older than src), but still cuts off
+        newGraph.get().run(2);
+        assertEquals(3, nmid.get());
+        assertEquals(1, nout.get());
+        //without cutoff: mid is newer, so out is rebuilt
+        final TaskGraph nocut = newGraph.get().setEarlyCutoff(false);
+        nocut.run(2);
+        assertEquals(TaskGraph.State.eBuilt, nocut.getNodes().get(0).getState());
+        assertEquals(TaskGraph.State.eBuilt, nocut.getNodes().get(1).getState());
+        assertEquals(2, nout.get());
+        Util.rmRfDirectory(dir);
+    }
+}
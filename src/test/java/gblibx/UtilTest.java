@@ -2,9 +2,14 @@ package gblibx;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class UtilTest {
 
@@ -33,4 +38,70 @@ class UtilTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void logException() throws InterruptedException {
+        final ExceptionFingerprints fingerprints = new ExceptionFingerprints(Duration.ofMillis(200), 2);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final PrintStream os = new PrintStream(bos);
+        for (int i = 0; i < 100; ++i) {
+            Util.logException(os, new IllegalStateException("repeated " + i), fingerprints);
+        }
+        Util.logException(os, new IllegalArgumentException("other"), fingerprints);
+        String out;
+        synchronized (os) {
+            out = bos.toString();
+        }
+        assertEquals(1, out.split("IllegalStateException").length - 1);
+        assertTrue(out.contains("IllegalArgumentException"));
+        final ExceptionFingerprints.Entry top = fingerprints.getTop(1).get(0);
+        assertEquals(IllegalStateException.class.getName(), top.className);
+        assertEquals(100, top.getCount());
+        //suppressed count is flushed once window expires
+        for (int i = 0; (i < 50) && !out.contains("repeated 99 times"); ++i) {
+            Thread.sleep(50);
+            synchronized (os) {
+                out = bos.toString();
+            }
+        }
+        assertTrue(out.contains("repeated 99 times"));
+        //bounded
+        Util.logException(os, new UnsupportedOperationException(), fingerprints);
+        assertEquals(2, fingerprints.getTop(10).size());
+    }
+
+    @Test
+    void flush() throws InterruptedException {
+        final ExceptionFingerprints fingerprints = new ExceptionFingerprints(Duration.ofMillis(50));
+        //same fingerprint: created at same line
+        final ExceptionFingerprints.Report[] reports = new ExceptionFingerprints.Report[4];
+        for (int i = 0; i < reports.length; ++i) {
+            if (2 == i) {
+                Thread.sleep(60);
+                final List<ExceptionFingerprints.Report> flushed = new ArrayList<>();
+                assertFalse(fingerprints.flush(flushed::add));
+                assertEquals(1, flushed.size());
+                assertEquals(1, flushed.get(0).suppressed);
+            }
+            reports[i] = fingerprints.record(new IllegalStateException("same"));
+        }
+        assertNotNull(reports[0]);
+        assertNull(reports[1]);
+        //flush does not start new window: next occurrence is reported in full
+        assertNotNull(reports[2]);
+        assertEquals(0, reports[2].suppressed);
+        assertNull(reports[3]);
+    }
+
+    @Test
+    void getClassOfMethod() {
+        assertEquals("UtilTest", Util.getClassOfMethod());
+        assertEquals("UtilTest", Util.getClassOfMethod(2));
+        final String[] callers = new String[2];
+        for (int i = 0; i < callers.length; ++i) {
+            callers[i] = Util.getCaller(cls -> false);
+        }
+        assertTrue(callers[0].startsWith("UtilTest.getClassOfMethod:"));
+        assertSame(callers[0], callers[1]); //cached by call site
+    }
+}